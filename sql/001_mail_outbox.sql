@@ -0,0 +1,15 @@
+-- Outbox of recovery emails drained by ejb.MailOutboxWorker.
+CREATE TABLE g3CRUD.mailOutbox (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    recipient VARCHAR(255),
+    password VARCHAR(255),
+    status VARCHAR(255),
+    attempts INT NOT NULL DEFAULT 0,
+    nextAttempt DATETIME,
+    creationDate DATETIME,
+    sentDate DATETIME,
+    lastError VARCHAR(500),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_mailOutbox_status_nextAttempt ON g3CRUD.mailOutbox (status, nextAttempt);
@@ -0,0 +1,9 @@
+-- Trip length in whole days, maintained by ejb.TripInfoManagerEJB and used
+-- by Customer.findOneWeek.
+ALTER TABLE g3CRUD.tripInfo ADD COLUMN durationDays INT NULL;
+
+UPDATE g3CRUD.tripInfo
+SET durationDays = TIMESTAMPDIFF(DAY, initialDate, lastDate)
+WHERE initialDate IS NOT NULL AND lastDate IS NOT NULL;
+
+CREATE INDEX idx_tripInfo_durationDays_customerId ON g3CRUD.tripInfo (durationDays, customerId);
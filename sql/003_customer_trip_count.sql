@@ -0,0 +1,9 @@
+-- Number of TripInfo rows of each customer, maintained by
+-- ejb.TripInfoManagerEJB and ejb.TripManagerEJB and used by
+-- Customer.findWithTrips and Customer.countWithTrips.
+ALTER TABLE g3CRUD.customer ADD COLUMN tripCount INT NOT NULL DEFAULT 0;
+
+UPDATE g3CRUD.customer c
+SET c.tripCount = (SELECT COUNT(*) FROM g3CRUD.tripInfo ti WHERE ti.customerId = c.mail);
+
+CREATE INDEX idx_customer_tripCount ON g3CRUD.customer (tripCount);
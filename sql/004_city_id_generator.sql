@@ -0,0 +1,10 @@
+-- Block id allocation for entities.City (TableGenerator with the pooled-lo
+-- optimizer): next_val is the first id of the next block of 50.
+CREATE TABLE g3crud.id_generator (
+    sequence_name VARCHAR(255) NOT NULL,
+    next_val BIGINT,
+    PRIMARY KEY (sequence_name)
+);
+
+INSERT INTO g3crud.id_generator (sequence_name, next_val)
+SELECT 'city', COALESCE(MAX(cityId), 0) + 1 FROM g3crud.city;
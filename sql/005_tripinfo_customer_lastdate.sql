@@ -0,0 +1,3 @@
+-- Index behind findTripInfoSummariesByCustomerId and the active/inactive
+-- TripInfo queries.
+CREATE INDEX idx_tripInfo_customerId_lastDate ON g3CRUD.tripInfo (customerId, lastDate);
@@ -0,0 +1,10 @@
+-- Version columns for the optimistic locking of City, Trip, TripInfo and
+-- User (Customer rows are versioned through their user row). Every row
+-- starts at version 0.
+ALTER TABLE g3crud.city ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE g3CRUD.trip ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE g3CRUD.tripInfo ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE g3CRUD.user ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
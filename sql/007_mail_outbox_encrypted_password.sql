@@ -0,0 +1,12 @@
+-- The outbox keeps the recovery password encrypted with the RSA public key
+-- of the server, and its hash, which is only written to the user once the
+-- email is sent. Messages still waiting hold a plaintext password whose
+-- hash was already written to the user; they are discarded, and those
+-- customers have to ask for a new recovery email.
+ALTER TABLE g3CRUD.mailOutbox MODIFY password VARCHAR(512);
+
+ALTER TABLE g3CRUD.mailOutbox ADD COLUMN passwordHash VARCHAR(255);
+
+UPDATE g3CRUD.mailOutbox SET status = 'FAILED', lastError = 'Discarded by migration 007' WHERE status IN ('PENDING', 'SENDING');
+
+UPDATE g3CRUD.mailOutbox SET password = NULL;
@@ -0,0 +1,5 @@
+-- durationDays counts calendar days, like TripInfo.refreshDurationDays, so
+-- the rows filled by 002 with TIMESTAMPDIFF(DAY, ...) are computed again.
+UPDATE g3CRUD.tripInfo
+SET durationDays = DATEDIFF(lastDate, initialDate)
+WHERE initialDate IS NOT NULL AND lastDate IS NOT NULL;
@@ -0,0 +1,117 @@
+package dto;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Snapshot of the hit/miss metrics of a second-level cache region.
+ *
+ * @author Janam
+ */
+@XmlRootElement
+public class CacheRegionStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Name of the cache region.
+     */
+    private String region;
+
+    /**
+     * Lookups served from the region.
+     */
+    private long hitCount;
+
+    /**
+     * Lookups not found in the region.
+     */
+    private long missCount;
+
+    /**
+     * Entries written to the region.
+     */
+    private long putCount;
+
+    /**
+     * Entries currently held in memory.
+     */
+    private long elementCountInMemory;
+
+    /**
+     * Empty Constructor.
+     */
+    public CacheRegionStatistics() {
+
+    }
+
+    /**
+     * @return the name of the region
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @param region the region to set
+     */
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    /**
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @param hitCount the hitCount to set
+     */
+    public void setHitCount(long hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    /**
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @param missCount the missCount to set
+     */
+    public void setMissCount(long missCount) {
+        this.missCount = missCount;
+    }
+
+    /**
+     * @return the number of puts
+     */
+    public long getPutCount() {
+        return putCount;
+    }
+
+    /**
+     * @param putCount the putCount to set
+     */
+    public void setPutCount(long putCount) {
+        this.putCount = putCount;
+    }
+
+    /**
+     * @return the number of entries in memory
+     */
+    public long getElementCountInMemory() {
+        return elementCountInMemory;
+    }
+
+    /**
+     * @param elementCountInMemory the elementCountInMemory to set
+     */
+    public void setElementCountInMemory(long elementCountInMemory) {
+        this.elementCountInMemory = elementCountInMemory;
+    }
+}
@@ -0,0 +1,123 @@
+package dto;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Result of creating one City of a batch.
+ *
+ * @author Janam
+ */
+@XmlRootElement
+public class CityBatchResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The City was stored.
+     */
+    public static final String CREATED = "CREATED";
+
+    /**
+     * The City was not stored.
+     */
+    public static final String FAILED = "FAILED";
+
+    /**
+     * Position of the City in the request.
+     */
+    private int index;
+
+    /**
+     * CityId assigned to the City, if it was stored.
+     */
+    private Long cityId;
+
+    /**
+     * {@link #CREATED} or {@link #FAILED}.
+     */
+    private String status;
+
+    /**
+     * Reason of the failure, if any.
+     */
+    private String message;
+
+    /**
+     * Empty Constructor.
+     */
+    public CityBatchResult() {
+
+    }
+
+    /**
+     * Constructor with all the fields.
+     *
+     * @param index Position of the City in the request.
+     * @param cityId CityId assigned to the City.
+     * @param status {@link #CREATED} or {@link #FAILED}.
+     * @param message Reason of the failure.
+     */
+    public CityBatchResult(int index, Long cityId, String status, String message) {
+        this.index = index;
+        this.cityId = cityId;
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * @return the position of the City in the request
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index the index to set
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the CityId assigned to the City
+     */
+    public Long getCityId() {
+        return cityId;
+    }
+
+    /**
+     * @param cityId the cityId to set
+     */
+    public void setCityId(Long cityId) {
+        this.cityId = cityId;
+    }
+
+    /**
+     * @return the status of the City
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @param status the status to set
+     */
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the reason of the failure
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @param message the message to set
+     */
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
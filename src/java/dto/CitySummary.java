@@ -0,0 +1,137 @@
+package dto;
+
+import entities.PopulationType;
+import entities.WeatherType;
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Flat summary of a City with only its scalar columns, read with a JPQL
+ * constructor expression instead of loading the entity and its trips.
+ *
+ * @author Janam
+ */
+@XmlRootElement
+public class CitySummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Identification field for the City.
+     */
+    private Long cityId;
+
+    /**
+     * Name of the City.
+     */
+    private String name;
+
+    /**
+     * Name of country of that City.
+     */
+    private String country;
+
+    /**
+     * populationType of the City.
+     */
+    private PopulationType populationType;
+
+    /**
+     * weatherType of the City.
+     */
+    private WeatherType weatherType;
+
+    /**
+     * Empty Constructor.
+     */
+    public CitySummary() {
+
+    }
+
+    /**
+     * Constructor used by the JPQL projection.
+     *
+     * @param cityId City CityId.
+     * @param name City name.
+     * @param country City country.
+     * @param populationType City populationType.
+     * @param weatherType City weatherType.
+     */
+    public CitySummary(Long cityId, String name, String country, PopulationType populationType, WeatherType weatherType) {
+        this.cityId = cityId;
+        this.name = name;
+        this.country = country;
+        this.populationType = populationType;
+        this.weatherType = weatherType;
+    }
+
+    /**
+     * @return the CityId of City
+     */
+    public Long getCityId() {
+        return cityId;
+    }
+
+    /**
+     * @param cityId City CityId.
+     */
+    public void setCityId(Long cityId) {
+        this.cityId = cityId;
+    }
+
+    /**
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return country
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * @param country the country to set
+     */
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    /**
+     * @return populationType
+     */
+    public PopulationType getPopulationType() {
+        return populationType;
+    }
+
+    /**
+     * @param populationType the populationType to set
+     */
+    public void setPopulationType(PopulationType populationType) {
+        this.populationType = populationType;
+    }
+
+    /**
+     * @return weatherType
+     */
+    public WeatherType getWeatherType() {
+        return weatherType;
+    }
+
+    /**
+     * @param weatherType the weatherType to set
+     */
+    public void setWeatherType(WeatherType weatherType) {
+        this.weatherType = weatherType;
+    }
+}
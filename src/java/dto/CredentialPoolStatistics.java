@@ -0,0 +1,174 @@
+package dto;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Snapshot of the credential worker pool metrics.
+ *
+ * @author Iñigo
+ */
+@XmlRootElement
+public class CredentialPoolStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Tasks waiting for a worker.
+     */
+    private int queueSize;
+
+    /**
+     * Workers running a task.
+     */
+    private int activeCount;
+
+    /**
+     * Tasks run.
+     */
+    private long completed;
+
+    /**
+     * Tasks rejected because the pool was full or timed out.
+     */
+    private long rejected;
+
+    /**
+     * Average time waiting for a worker in microseconds.
+     */
+    private long averageQueueMicros;
+
+    /**
+     * Maximum time waiting for a worker in microseconds.
+     */
+    private long maxQueueMicros;
+
+    /**
+     * Average run time in microseconds.
+     */
+    private long averageServiceMicros;
+
+    /**
+     * Maximum run time in microseconds.
+     */
+    private long maxServiceMicros;
+
+    /**
+     * Empty Constructor.
+     */
+    public CredentialPoolStatistics() {
+
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @param queueSize the queueSize to set
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * @return the number of workers running a task
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @param activeCount the activeCount to set
+     */
+    public void setActiveCount(int activeCount) {
+        this.activeCount = activeCount;
+    }
+
+    /**
+     * @return the number of tasks run
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @param completed the completed to set
+     */
+    public void setCompleted(long completed) {
+        this.completed = completed;
+    }
+
+    /**
+     * @return the number of tasks rejected
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @param rejected the rejected to set
+     */
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    /**
+     * @return the average queue time
+     */
+    public long getAverageQueueMicros() {
+        return averageQueueMicros;
+    }
+
+    /**
+     * @param averageQueueMicros the averageQueueMicros to set
+     */
+    public void setAverageQueueMicros(long averageQueueMicros) {
+        this.averageQueueMicros = averageQueueMicros;
+    }
+
+    /**
+     * @return the maximum queue time
+     */
+    public long getMaxQueueMicros() {
+        return maxQueueMicros;
+    }
+
+    /**
+     * @param maxQueueMicros the maxQueueMicros to set
+     */
+    public void setMaxQueueMicros(long maxQueueMicros) {
+        this.maxQueueMicros = maxQueueMicros;
+    }
+
+    /**
+     * @return the average service time
+     */
+    public long getAverageServiceMicros() {
+        return averageServiceMicros;
+    }
+
+    /**
+     * @param averageServiceMicros the averageServiceMicros to set
+     */
+    public void setAverageServiceMicros(long averageServiceMicros) {
+        this.averageServiceMicros = averageServiceMicros;
+    }
+
+    /**
+     * @return the maximum service time
+     */
+    public long getMaxServiceMicros() {
+        return maxServiceMicros;
+    }
+
+    /**
+     * @param maxServiceMicros the maxServiceMicros to set
+     */
+    public void setMaxServiceMicros(long maxServiceMicros) {
+        this.maxServiceMicros = maxServiceMicros;
+    }
+}
@@ -0,0 +1,73 @@
+package dto;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Answer to whether a mail can be used to sign up, given by the in-memory
+ * mail filter without reading the database.
+ *
+ * @author Janam
+ */
+@XmlRootElement
+public class MailAvailability implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The mail asked for.
+     */
+    private String mail;
+
+    /**
+     * True if the mail is certainly not registered. False if it may be
+     * registered, which is wrong at the false positive rate of the filter.
+     */
+    private boolean available;
+
+    /**
+     * Empty Constructor.
+     */
+    public MailAvailability() {
+
+    }
+
+    /**
+     * Full Constructor.
+     *
+     * @param mail The mail asked for.
+     * @param available True if the mail is certainly not registered.
+     */
+    public MailAvailability(String mail, boolean available) {
+        this.mail = mail;
+        this.available = available;
+    }
+
+    /**
+     * @return the mail asked for
+     */
+    public String getMail() {
+        return mail;
+    }
+
+    /**
+     * @param mail the mail asked for to set
+     */
+    public void setMail(String mail) {
+        this.mail = mail;
+    }
+
+    /**
+     * @return true if the mail is certainly not registered
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * @param available the availability of the mail to set
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+}
@@ -0,0 +1,136 @@
+package dto;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Snapshot of the recovery email outbox metrics.
+ *
+ * @author Janam
+ */
+@XmlRootElement
+public class MailOutboxStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Messages waiting in the outbox.
+     */
+    private long queueDepth;
+
+    /**
+     * Messages being sent by this node.
+     */
+    private int inFlight;
+
+    /**
+     * Messages sent by this node.
+     */
+    private long sent;
+
+    /**
+     * Failed attempts on this node.
+     */
+    private long failed;
+
+    /**
+     * Average send latency in milliseconds.
+     */
+    private long averageSendMillis;
+
+    /**
+     * Maximum send latency in milliseconds.
+     */
+    private long maxSendMillis;
+
+    /**
+     * Empty Constructor.
+     */
+    public MailOutboxStatistics() {
+
+    }
+
+    /**
+     * @return the number of messages waiting in the outbox
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @param queueDepth the queueDepth to set
+     */
+    public void setQueueDepth(long queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * @return the number of messages being sent
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param inFlight the inFlight to set
+     */
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * @return the number of messages sent
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @param sent the sent to set
+     */
+    public void setSent(long sent) {
+        this.sent = sent;
+    }
+
+    /**
+     * @return the number of failed attempts
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @param failed the failed to set
+     */
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    /**
+     * @return the average send latency in milliseconds
+     */
+    public long getAverageSendMillis() {
+        return averageSendMillis;
+    }
+
+    /**
+     * @param averageSendMillis the averageSendMillis to set
+     */
+    public void setAverageSendMillis(long averageSendMillis) {
+        this.averageSendMillis = averageSendMillis;
+    }
+
+    /**
+     * @return the maximum send latency in milliseconds
+     */
+    public long getMaxSendMillis() {
+        return maxSendMillis;
+    }
+
+    /**
+     * @param maxSendMillis the maxSendMillis to set
+     */
+    public void setMaxSendMillis(long maxSendMillis) {
+        this.maxSendMillis = maxSendMillis;
+    }
+}
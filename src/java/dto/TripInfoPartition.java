@@ -0,0 +1,76 @@
+package dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The TripInfos of a Customer split into active and inactive ones at a given
+ * date.
+ *
+ * @author Iñigo
+ */
+@XmlRootElement
+public class TripInfoPartition implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String mail;
+
+    private Date date;
+
+    private List<TripInfoSummary> active = new ArrayList<>();
+
+    private List<TripInfoSummary> inactive = new ArrayList<>();
+
+    public TripInfoPartition() {
+    }
+
+    public TripInfoPartition(String mail, Date date) {
+        this.mail = mail;
+        this.date = date;
+    }
+
+    public String getMail() {
+        return mail;
+    }
+
+    public void setMail(String mail) {
+        this.mail = mail;
+    }
+
+    /**
+     * @return the date used to split the TripInfos
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    /**
+     * @return the TripInfos whose lastDate is after the date
+     */
+    public List<TripInfoSummary> getActive() {
+        return active;
+    }
+
+    public void setActive(List<TripInfoSummary> active) {
+        this.active = active;
+    }
+
+    /**
+     * @return the TripInfos whose lastDate is before the date
+     */
+    public List<TripInfoSummary> getInactive() {
+        return inactive;
+    }
+
+    public void setInactive(List<TripInfoSummary> inactive) {
+        this.inactive = inactive;
+    }
+}
@@ -0,0 +1,90 @@
+package dto;
+
+import entities.EnumTripType;
+import java.io.Serializable;
+import java.util.Date;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Flat summary of a TripInfo and its Trip, read with a JPQL constructor
+ * expression instead of loading the TripInfo, Trip and Customer entities.
+ *
+ * @author Iñigo
+ */
+@XmlRootElement
+public class TripInfoSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Integer tripId;
+
+    private EnumTripType tripType;
+
+    private String description;
+
+    private Date initialDate;
+
+    private Date lastDate;
+
+    private Integer durationDays;
+
+    public TripInfoSummary() {
+    }
+
+    public TripInfoSummary(Integer tripId, EnumTripType tripType, String description, Date initialDate, Date lastDate, Integer durationDays) {
+        this.tripId = tripId;
+        this.tripType = tripType;
+        this.description = description;
+        this.initialDate = initialDate;
+        this.lastDate = lastDate;
+        this.durationDays = durationDays;
+    }
+
+    public Integer getTripId() {
+        return tripId;
+    }
+
+    public void setTripId(Integer tripId) {
+        this.tripId = tripId;
+    }
+
+    public EnumTripType getTripType() {
+        return tripType;
+    }
+
+    public void setTripType(EnumTripType tripType) {
+        this.tripType = tripType;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public Date getInitialDate() {
+        return initialDate;
+    }
+
+    public void setInitialDate(Date initialDate) {
+        this.initialDate = initialDate;
+    }
+
+    public Date getLastDate() {
+        return lastDate;
+    }
+
+    public void setLastDate(Date lastDate) {
+        this.lastDate = lastDate;
+    }
+
+    public Integer getDurationDays() {
+        return durationDays;
+    }
+
+    public void setDurationDays(Integer durationDays) {
+        this.durationDays = durationDays;
+    }
+}
@@ -0,0 +1,57 @@
+package dto;
+
+import entities.EnumTripType;
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Flat summary of a Trip with only its scalar columns, read with a JPQL
+ * constructor expression instead of loading the entity, its cities and its
+ * TripInfos.
+ *
+ * @author Iñigo
+ */
+@XmlRootElement
+public class TripSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Integer id;
+
+    private EnumTripType tripType;
+
+    private String description;
+
+    public TripSummary() {
+    }
+
+    public TripSummary(Integer id, EnumTripType tripType, String description) {
+        this.id = id;
+        this.tripType = tripType;
+        this.description = description;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public EnumTripType getTripType() {
+        return tripType;
+    }
+
+    public void setTripType(EnumTripType tripType) {
+        this.tripType = tripType;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+}
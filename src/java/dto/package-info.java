@@ -0,0 +1,4 @@
+/**
+ * This package contains the data transfer objects returned by the restfulService.
+ */
+package dto;
@@ -1,20 +1,32 @@
 package ejb;
 
+import dto.CitySummary;
 import ejbLocal.CityManagerEJBLocal;
+import ejbLocal.EntityCacheEJBLocal;
 import entities.City;
 import entities.PopulationType;
 import entities.Trip;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
 import javax.ejb.Local;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import org.hibernate.SQLQuery;
 
 /**
  * CityManagerEJB class for managing City entity CRUD operations.
@@ -30,12 +42,35 @@ public class CityManagerEJB implements CityManagerEJBLocal {
      */
     private static final Logger LOGGER = Logger.getLogger("javafxserverside");
 
+    /**
+     * Number of Cities sent to the database in each JDBC batch. It matches
+     * hibernate.jdbc.batch_size.
+     */
+    private static final int FLUSH_INTERVAL = 50;
+
+    /**
+     * Maximum number of CityIds in each bulk delete statement.
+     */
+    private static final int DELETE_CHUNK_SIZE = 500;
+
     /**
      * Entity manager object.
      */
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * EJB reference for the second-level cache.
+     */
+    @EJB
+    private EntityCacheEJBLocal entityCache;
+
+    /**
+     * Context of the current call.
+     */
+    @Resource
+    private SessionContext context;
+
     /**
      * Creates a City and stores it in the underlying application storage.
      *
@@ -51,6 +86,10 @@ public class CityManagerEJB implements CityManagerEJBLocal {
 
             em.persist(city);
 
+            // The pooled ids defer the insert to the commit; a failure there
+            // would not be a CreateException
+            em.flush();
+
             LOGGER.info("CityManager: City created.");
 
         } catch (Exception e) {
@@ -61,6 +100,51 @@ public class CityManagerEJB implements CityManagerEJBLocal {
         }
     }
 
+    /**
+     * Creates several Cities in a single transaction. The persistence context
+     * is flushed and cleared every {@link #FLUSH_INTERVAL} Cities, so the
+     * inserts are sent in JDBC batches and the memory used does not grow with
+     * the number of Cities.
+     *
+     * @param cities The {@link City} objects containing the city data.
+     * @throws CreateException If there is any Exception during processing.
+     */
+    @Override
+    public void createCities(List<City> cities) throws CreateException {
+
+        LOGGER.log(Level.INFO, "CityManager: Creating {0} Cities.", cities.size());
+
+        try {
+
+            int count = 0;
+
+            for (City city : cities) {
+
+                em.persist(city);
+
+                if (++count % FLUSH_INTERVAL == 0) {
+
+                    em.flush();
+                    em.clear();
+                }
+            }
+
+            em.flush();
+            em.clear();
+
+            LOGGER.info("CityManager: Cities created.");
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "CityManager: Exception creating Cities.{0}", e.getMessage());
+
+            // None of the Cities of the call must be stored
+            context.setRollbackOnly();
+
+            throw new CreateException(e.getMessage());
+        }
+    }
+
     /**
      * Updates a city's data in the underlying application storage.
      *
@@ -76,6 +160,10 @@ public class CityManagerEJB implements CityManagerEJBLocal {
 
             if (!em.contains(city)) {
 
+                if (city.getVersion() == null) {
+                    city.setVersion(EntityVersions.current(em, "City", "cityId", city.getCityId()));
+                }
+
                 em.merge(city);
             }
 
@@ -83,6 +171,12 @@ public class CityManagerEJB implements CityManagerEJBLocal {
 
             LOGGER.info("CityManager: City updated.");
 
+        } catch (OptimisticLockException e) {
+
+            LOGGER.log(Level.WARNING, "CityManager: Stale version updating City {0}.", city.getCityId());
+
+            throw new StaleVersionException(e.getMessage());
+
         } catch (Exception e) {
 
             LOGGER.log(Level.SEVERE, "CityManager: Exception updating City.{0}", e.getMessage());
@@ -92,7 +186,64 @@ public class CityManagerEJB implements CityManagerEJBLocal {
     }
 
     /**
-     * Deletes a city's data in the underlying application storage.
+     * Changes some attributes of a City with a single JPQL UPDATE. Hibernate
+     * evicts the cached Cities and City queries when it runs.
+     *
+     * @param cityId The id of the City.
+     * @param version The version the changes were made from, or null.
+     * @param changes The new values, by attribute name.
+     * @return The new version of the City, or null if it does not exist.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    @Override
+    public Long patchCity(Long cityId, Long version, Map<String, Object> changes) throws UpdateException {
+
+        LOGGER.info("CityManager: Patching City.");
+
+        try {
+
+            PartialUpdate.check(changes, PATCH_ATTRIBUTES);
+
+            Query update = PartialUpdate.bind(em.createQuery("UPDATE City c SET "
+                    + PartialUpdate.assignments("c", changes, PATCH_ATTRIBUTES)
+                    + ", c.version = c.version + 1 WHERE c.cityId = :cityId"
+                    + (version == null ? "" : " AND c.version = :version")), changes)
+                    .setParameter("cityId", cityId);
+
+            if (version != null) {
+                update.setParameter("version", version);
+            }
+
+            int updated = update.executeUpdate();
+
+            Long current = EntityVersions.current(em, "City", "cityId", cityId);
+
+            if (updated == 0 && current != null) {
+
+                LOGGER.log(Level.WARNING, "CityManager: Stale version patching City {0}.", cityId);
+
+                throw new StaleVersionException("City " + cityId + " is at version " + current);
+            }
+
+            LOGGER.log(Level.INFO, "CityManager: Patched {0} City.", updated);
+
+            return updated == 0 ? null : current;
+
+        } catch (StaleVersionException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "CityManager: Exception patching City.{0}", e.getMessage());
+
+            throw new UpdateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes a city's data in the underlying application storage, through
+     * {@link #deleteCitiesById(List)}.
      *
      * @param city The {@link City} object containing the city data.
      * @throws DeleteException If there is any Exception during processing.
@@ -100,33 +251,61 @@ public class CityManagerEJB implements CityManagerEJBLocal {
     @Override
     public void deleteCity(City city) throws DeleteException {
 
-        LOGGER.info("CityManager: Deleting City.");
+        deleteCitiesById(Collections.singletonList(city.getCityId()));
+    }
+
+    /**
+     * Deletes Cities by CityId with bulk statements, without loading them nor
+     * their trips. Their rows in trip_cities are deleted first with a single
+     * native statement, and then the Cities with a single JPQL statement, in
+     * groups of {@link #DELETE_CHUNK_SIZE} ids.
+     *
+     * @param cityIds The CityIds of the Cities to be deleted.
+     * @return The number of Cities deleted.
+     * @throws DeleteException If there is any Exception during processing.
+     */
+    @Override
+    public int deleteCitiesById(List<Long> cityIds) throws DeleteException {
+
+        LOGGER.log(Level.INFO, "CityManager: Deleting {0} Cities.", cityIds.size());
+
+        int deleted = 0;
 
         try {
 
-            // Detach the City from associated Trip entities
-            List<Trip> trips = city.getTrip();
+            for (int from = 0; from < cityIds.size(); from += DELETE_CHUNK_SIZE) {
 
-            for (Trip trip : trips) {
+                List<Long> chunk = cityIds.subList(from, Math.min(from + DELETE_CHUNK_SIZE, cityIds.size()));
 
-                trip.getCities().remove(city);
-            }
+                // Detach the Cities from their trips
+                em.createNativeQuery("DELETE FROM g3CRUD.trip_cities WHERE city_id IN (:cityIds)")
+                        .unwrap(SQLQuery.class)
+                        .addSynchronizedQuerySpace("g3CRUD.trip_cities")
+                        .setParameterList("cityIds", chunk)
+                        .executeUpdate();
 
-            // Update the City to remove associations
-            em.merge(city);
+                // Now delete the Cities
+                deleted += em.createNamedQuery("deleteCitiesById")
+                        .setParameter("cityIds", chunk)
+                        .executeUpdate();
+            }
 
-            // Now delete the city
-            em.remove(city);
+            // Both sides of trip_cities may still hold the deleted Cities
+            entityCache.evictCollectionRegion(EntityCacheEJBLocal.TRIP_CITIES);
+            entityCache.evictCollectionRegion(EntityCacheEJBLocal.CITY_TRIPS);
 
-            LOGGER.info("CityManager: City deleted.");
+            LOGGER.log(Level.INFO, "CityManager: {0} Cities deleted.", deleted);
 
         } catch (Exception e) {
 
-            LOGGER.log(Level.SEVERE, "CityManager: Exception deleting City.{0}", e.getMessage());
+            LOGGER.log(Level.SEVERE, "CityManager: Exception deleting Cities.{0}", e.getMessage());
+
+            context.setRollbackOnly();
 
             throw new DeleteException(e.getMessage());
         }
 
+        return deleted;
     }
 
     /**
@@ -145,7 +324,7 @@ public class CityManagerEJB implements CityManagerEJBLocal {
 
             LOGGER.info("CityManager: Finding City by CityId.");
 
-            city = em.find(City.class, CityId);
+            city = ReadOnly.read(em, () -> em.find(City.class, CityId));
 
             if (city != null) {
 
@@ -179,7 +358,7 @@ public class CityManagerEJB implements CityManagerEJBLocal {
 
             LOGGER.info("CityManager: Finding all City.");
 
-            city = em.createNamedQuery("findAllCity").getResultList();
+            city = ReadOnly.read(em, () -> em.createNamedQuery("findAllCity").getResultList());
 
         } catch (Exception e) {
 
@@ -192,6 +371,62 @@ public class CityManagerEJB implements CityManagerEJBLocal {
         return city;
     }
 
+    /**
+     * Finds the scalar columns of all cities with a single query, without
+     * loading their trips.
+     *
+     * @return A list of CitySummary objects.
+     * @throws ReadException If an exception occurs during the read operation.
+     */
+    @Override
+    public List<CitySummary> findCitySummaries() throws ReadException {
+
+        List<CitySummary> cities = null;
+
+        try {
+
+            LOGGER.info("CityManager: Finding all City summaries.");
+
+            cities = em.createNamedQuery("findCitySummaries", CitySummary.class).getResultList();
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "CityManager: Exception finding all City summaries:", e.getMessage());
+
+            throw new ReadException(e.getMessage());
+
+        }
+
+        return cities;
+    }
+
+    /**
+     * Reads all cities one by one with a server-side cursor and hands them to
+     * a consumer. The persistence context is cleared periodically.
+     *
+     * @param consumer The consumer of the cities.
+     * @throws ReadException If an exception occurs during the read operation.
+     */
+    @Override
+    public void streamAllCities(Consumer<City> consumer) throws ReadException {
+
+        try {
+
+            LOGGER.info("CityManager: Streaming all City.");
+
+            long count = ResultStreams.scroll(em, "findAllCity", City.class, consumer);
+
+            LOGGER.log(Level.INFO, "CityManager: {0} City streamed.", count);
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "CityManager: Exception streaming all City:", e.getMessage());
+
+            throw new ReadException(e.getMessage());
+
+        }
+    }
+
     /**
      * Finds all cities in a specific country.
      *
@@ -209,7 +444,7 @@ public class CityManagerEJB implements CityManagerEJBLocal {
 
             LOGGER.info("CityManager: Finding all City by country.");
 
-            cities = em.createNamedQuery("findAllCityByCountry").setParameter("country", country).getResultList();
+            cities = ReadOnly.read(em, () -> em.createNamedQuery("findAllCityByCountry").setParameter("country", country).getResultList());
 
         } catch (Exception e) {
 
@@ -239,7 +474,7 @@ public class CityManagerEJB implements CityManagerEJBLocal {
 
             LOGGER.info("CityManager: Finding all City by populationType.");
 
-            cities = em.createNamedQuery("findAllCityBypopulationType").setParameter("populationType", populationType).getResultList();
+            cities = ReadOnly.read(em, () -> em.createNamedQuery("findAllCityBypopulationType").setParameter("populationType", populationType).getResultList());
 
         } catch (Exception e) {
 
@@ -252,4 +487,39 @@ public class CityManagerEJB implements CityManagerEJBLocal {
         return cities;
     }
 
+    /**
+     * Finds a page of cities ordered by CityId, starting after the given
+     * CityId.
+     *
+     * @param afterCityId The CityId the page starts after, or null for the
+     * first page.
+     * @param maxResults The maximum number of cities in the page.
+     * @return A list of City objects.
+     * @throws ReadException If an exception occurs during the read operation.
+     */
+    @Override
+    public List<City> findCitiesPage(Long afterCityId, int maxResults) throws ReadException {
+
+        List<City> cities = null;
+
+        try {
+
+            LOGGER.info("CityManager: Finding page of City.");
+
+            cities = ReadOnly.read(em, () -> em.createNamedQuery("findCityPage", City.class)
+                    .setParameter("after", afterCityId == null ? 0L : afterCityId)
+                    .setMaxResults(maxResults)
+                    .getResultList());
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "CityManager: Exception finding page of City:", e.getMessage());
+
+            throw new ReadException(e.getMessage());
+
+        }
+
+        return cities;
+    }
+
 }
@@ -1,19 +1,35 @@
 package ejb;
 
 import ejbLocal.CustomerManagerEJBLocal;
+import ejbLocal.MailOutboxEJBLocal;
 import emailRecovery.Email;
-import static encryption.EncryptionImplementation.decrypWithPrivateKey;
-import static encryption.EncryptionImplementation.generateHash;
+import encryption.CredentialWorkerPool;
+import encryption.SignInCache;
 import entities.Customer;
+import entities.User;
 import exception.CreateException;
+import exception.CredentialRejectedException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import org.hibernate.SQLQuery;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,11 +46,34 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     @PersistenceContext
     private EntityManager entityManager;
 
+    /**
+     * EJB reference for the recovery email outbox.
+     */
+    @EJB
+    private MailOutboxEJBLocal mailOutbox;
+
+    /**
+     * EJB reference for the registry of the mails in use.
+     */
+    @EJB
+    private MailRegistry mailRegistry;
+
     /**
      * Logger for logging messages related to user management operations.
      */
     private static final Logger LOGGER = Logger.getLogger(CustomerManagerEJB.class.getName());
 
+    /**
+     * Patchable attributes stored in the user table.
+     */
+    private static final Set<String> USER_COLUMNS = Collections.singleton("password");
+
+    /**
+     * Patchable attributes stored in the customer table.
+     */
+    private static final Set<String> CUSTOMER_COLUMNS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("name", "zip", "address", "phone")));
+
     /**
      * Retrieves all customers.
      *
@@ -45,7 +84,7 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     public List<Customer> findAllCustomers() throws ReadException {
         List<Customer> customers = null;
         try {
-            customers = entityManager.createNamedQuery("Customer.findAllCustomers", Customer.class).getResultList();
+            customers = ReadOnly.read(entityManager, () -> entityManager.createNamedQuery("Customer.findAllCustomers", Customer.class).getResultList());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error retrieving all customers", e);
             throw new ReadException(e.getMessage());
@@ -54,17 +93,64 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     }
 
     /**
-     * Retrieves a customer by their email address.
+     * Reads all customers one by one with a server-side cursor and hands them
+     * to a consumer. The persistence context is cleared periodically.
+     *
+     * @param consumer The consumer of the customers.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public void streamAllCustomers(Consumer<Customer> consumer) throws ReadException {
+        try {
+            long count = ResultStreams.scroll(entityManager, "Customer.findAllCustomers", Customer.class, consumer);
+            LOGGER.log(Level.INFO, "Streamed {0} customers", count);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error streaming all customers", e);
+            throw new ReadException(e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves a page of customers ordered by email address, starting after
+     * the given email address.
+     *
+     * @param afterMail The email address the page starts after, or null for
+     * the first page.
+     * @param maxResults The maximum number of customers in the page.
+     * @return A list of customers.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public List<Customer> findCustomersPage(String afterMail, int maxResults) throws ReadException {
+        List<Customer> customers = null;
+        try {
+            customers = ReadOnly.read(entityManager, () -> entityManager.createNamedQuery("Customer.findPage", Customer.class)
+                    .setParameter("after", afterMail == null ? "" : afterMail)
+                    .setMaxResults(maxResults)
+                    .getResultList());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error retrieving page of customers", e);
+            throw new ReadException(e.getMessage());
+        }
+        return customers;
+    }
+
+    /**
+     * Retrieves a customer by their email address. The {@link MailLookupCache}
+     * answers an unknown mail, or the mail of a user that is not a customer,
+     * without reading the database. An unknown mail is not an error.
      *
      * @param mail The email address of the customer.
-     * @return The customer with the specified email address.
+     * @return The customer with the specified email address, or null if there
+     * is none.
      * @throws ReadException If there is any Exception during processing.
      */
     @Override
     public Customer findCustomerByMail(String mail) throws ReadException {
         Customer customer = null;
         try {
-            customer = entityManager.createNamedQuery("Customer.findByEmail", Customer.class).setParameter("email", mail).getSingleResult();
+            customer = MailLookupCache.INSTANCE.get(mail, Customer.class,
+                    key -> ReadOnly.read(entityManager, () -> entityManager.find(User.class, key)));
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error retrieving customer by mail: " + mail, e);
             throw new ReadException(e.getMessage());
@@ -82,13 +168,29 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     public List<Customer> findCustomersWithTrips() throws ReadException {
         try {
             TypedQuery<Customer> query = entityManager.createNamedQuery("Customer.findWithTrips", Customer.class);
-            return query.getResultList();
+            return ReadOnly.read(entityManager, query::getResultList);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error retrieving customers with trips", e);
             throw new ReadException(e.getMessage());
         }
     }
 
+    /**
+     * Counts the customers with associated trips.
+     *
+     * @return The number of customers with associated trips.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public long countCustomersWithTrips() throws ReadException {
+        try {
+            return entityManager.createNamedQuery("Customer.countWithTrips", Long.class).getSingleResult();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error counting customers with trips", e);
+            throw new ReadException(e.getMessage());
+        }
+    }
+
     /**
      * Retrieves all customers order by CreationDate.
      *
@@ -99,7 +201,7 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     public List<Customer> findAllOrderByCreationDate() throws ReadException {
         List<Customer> customers = null;
         try {
-            customers = entityManager.createNamedQuery("Customer.findAllOrderDate", Customer.class).getResultList();
+            customers = ReadOnly.read(entityManager, () -> entityManager.createNamedQuery("Customer.findAllOrderDate", Customer.class).getResultList());
 
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error retrieving all customers", e);
@@ -118,7 +220,7 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     public List<Customer> findOneWeekTrips() throws ReadException {
         List<Customer> customers = null;
         try {
-            customers = entityManager.createNamedQuery("Customer.findOneWeek", Customer.class).getResultList();
+            customers = ReadOnly.read(entityManager, () -> entityManager.createNamedQuery("Customer.findOneWeek", Customer.class).getResultList());
 
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error retrieving all customers", e);
@@ -137,6 +239,8 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     public void createCustomer(Customer customer) throws CreateException {
         try {
             entityManager.persist(customer);
+            mailRegistry.added(customer.getMail());
+            MailLookupCache.INSTANCE.invalidate(customer.getMail());
             LOGGER.log(Level.INFO, "Created customer with email: {0}", customer.getMail());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error creating customer", e);
@@ -154,14 +258,25 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
     public void updateCustomer(Customer customer, boolean encrypted) throws UpdateException {
 
         try {
+            if (customer.getVersion() == null) {
+                customer.setVersion(EntityVersions.current(entityManager, "User", "mail", customer.getMail()));
+            }
             if (encrypted == true) {
-                customer.setPassword(generateHash(decrypWithPrivateKey(customer.getPassword())));
+                customer.setPassword(CredentialWorkerPool.getInstance().decryptAndHash(customer.getPassword()));
                 entityManager.merge(customer);
                 LOGGER.log(Level.INFO, "Updated customer with id: {0}", customer.getMail());
             } else {
-                customer.setPassword(generateHash(customer.getPassword()));
+                customer.setPassword(CredentialWorkerPool.getInstance().hash(customer.getPassword()));
                 entityManager.merge(customer);
             }
+            entityManager.flush();
+            SignInCache.getInstance().invalidate(customer.getMail());
+            MailLookupCache.INSTANCE.invalidate(customer.getMail());
+        } catch (CredentialRejectedException e) {
+            throw e;
+        } catch (OptimisticLockException e) {
+            LOGGER.log(Level.WARNING, "Stale version updating customer {0}", customer.getMail());
+            throw new StaleVersionException(e.getMessage());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error updating customer", e);
             throw new UpdateException(e.getMessage());
@@ -169,6 +284,60 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
 
     }
 
+    /**
+     * Changes some attributes of a customer with a single native UPDATE of
+     * the user and customer tables joined, so a user that is not a customer
+     * is not changed. The password is written as given.
+     *
+     * @param mail The mail of the customer.
+     * @param version The version the changes were made from, or null.
+     * @param changes The new values, by attribute name.
+     * @return The new version of the customer, or null if it does not exist.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    @Override
+    public Long patchCustomer(String mail, Long version, Map<String, Object> changes) throws UpdateException {
+        try {
+            PartialUpdate.check(changes, PATCH_ATTRIBUTES);
+            StringJoiner set = new StringJoiner(", ");
+            set.add("u.version = u.version + 1");
+            for (String assignments : new String[]{
+                PartialUpdate.assignments("u", changes, USER_COLUMNS),
+                PartialUpdate.assignments("c", changes, CUSTOMER_COLUMNS)}) {
+                if (!assignments.isEmpty()) {
+                    set.add(assignments);
+                }
+            }
+            Query update = PartialUpdate.bind(entityManager.createNativeQuery(
+                    "UPDATE g3CRUD.user u JOIN g3CRUD.customer c ON c.mail = u.mail SET " + set
+                    + " WHERE u.mail = :mail" + (version == null ? "" : " AND u.version = :version")), changes)
+                    .setParameter("mail", mail);
+            if (version != null) {
+                update.setParameter("version", version);
+            }
+            int updated = update.unwrap(SQLQuery.class)
+                    .addSynchronizedEntityClass(Customer.class)
+                    .executeUpdate();
+            Long current = updated > 0 || version != null
+                    ? EntityVersions.current(entityManager, "Customer", "mail", mail) : null;
+            if (updated == 0 && current != null) {
+                LOGGER.log(Level.WARNING, "Stale version patching customer {0}", mail);
+                throw new StaleVersionException("Customer " + mail + " is at version " + current);
+            }
+            if (changes.containsKey("password")) {
+                SignInCache.getInstance().invalidate(mail);
+            }
+            MailLookupCache.INSTANCE.invalidate(mail);
+            LOGGER.log(Level.INFO, "Patched customer with email: {0}", mail);
+            return current;
+        } catch (StaleVersionException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error patching customer", e);
+            throw new UpdateException(e.getMessage());
+        }
+    }
+
     /**
      * Deletes a customer by their ID.
      *
@@ -181,6 +350,9 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
             Customer customer = entityManager.find(Customer.class, customerId);
             if (customer != null) {
                 entityManager.remove(customer);
+                SignInCache.getInstance().invalidate(customerId);
+                MailLookupCache.INSTANCE.invalidate(customerId);
+                mailRegistry.deleted(customerId);
                 LOGGER.log(Level.INFO, "Deleted customer with id: {0}", customerId);
             } else {
                 LOGGER.log(Level.WARNING, "Customer with id {0} not found", customerId);
@@ -193,20 +365,29 @@ public class CustomerManagerEJB implements CustomerManagerEJBLocal {
 
     /**
      * Thsi method is to send an Email to customer for recovering its Email.
+     * The email is written to the outbox with the new password; the outbox
+     * worker sends it in the background and only then stores the new
+     * password, so the old one keeps working if the email is never sent.
+     * Nothing is done for a mail that is not registered, which the mail
+     * registry usually tells without reading the database.
      *
      * @param customer Email to send an Email to recover password
      * @throws ReadException If there is any Exception during processing.
      */
     @Override
     public void sendRecoveryMail(Customer customer) throws ReadException {
-        //mail recoverMail = new Email();
         try {
-            String newPassword = Email.sendEmail(customer.getMail());
-            customer.setPassword(newPassword);
-            updateCustomer(customer, false);
-        } catch (UpdateException e) {
-            // Log or handle the specific exception related to customer update
-            throw new ReadException("Error updating customer: " + e.getMessage());
+            if (!mailRegistry.isRegistered(customer.getMail())) {
+                LOGGER.log(Level.INFO, "Recovery mail skipped, mail not registered: {0}", customer.getMail());
+                return;
+            }
+            String newPassword = Email.generateRecoveryPassword();
+            mailOutbox.enqueue(customer.getMail(), newPassword,
+                    CredentialWorkerPool.getInstance().hash(newPassword));
+        } catch (IOException e) {
+            throw new ReadException("Error generating recovery password: " + e.getMessage());
+        } catch (CreateException e) {
+            throw new ReadException("Error queuing recovery mail: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,56 @@
+package ejb;
+
+import entities.Customer;
+import javax.persistence.EntityManager;
+import org.hibernate.SQLQuery;
+
+/**
+ * Helper for maintaining the {@code tripCount} column of the customer table
+ * when TripInfo rows are created or deleted.
+ *
+ * The column is written only with native updates in the same transaction as
+ * the TripInfo change. They are synchronized on {@link Customer}, so Hibernate
+ * invalidates only the cached customers and queries over the user and
+ * customer tables.
+ *
+ * @author Iñigo
+ */
+final class CustomerTripCounter {
+
+    private CustomerTripCounter() {
+    }
+
+    /**
+     * Adds a delta to the trip counter of a customer, never going below zero.
+     *
+     * @param em The entity manager.
+     * @param mail The mail of the customer.
+     * @param delta The number of TripInfos added, or removed if negative.
+     * @return The number of customers updated.
+     */
+    static int add(EntityManager em, String mail, int delta) {
+        return em.createNativeQuery("UPDATE g3CRUD.customer SET tripCount = GREATEST(tripCount + ?, 0) WHERE mail = ?")
+                .unwrap(SQLQuery.class)
+                .addSynchronizedEntityClass(Customer.class)
+                .setParameter(0, delta)
+                .setParameter(1, mail)
+                .executeUpdate();
+    }
+
+    /**
+     * Decrements the trip counter of every customer with a TripInfo of the
+     * given trip. It must run before the TripInfos are deleted.
+     *
+     * @param em The entity manager.
+     * @param tripId The id of the trip being deleted.
+     * @return The number of customers updated.
+     */
+    static int removeTrip(EntityManager em, Integer tripId) {
+        return em.createNativeQuery("UPDATE g3CRUD.customer SET tripCount = GREATEST(tripCount - 1, 0)"
+                + " WHERE mail IN (SELECT ti.customerId FROM g3CRUD.tripInfo ti WHERE ti.tripId = ?)")
+                .unwrap(SQLQuery.class)
+                .addSynchronizedEntityClass(Customer.class)
+                .setParameter(0, tripId)
+                .executeUpdate();
+    }
+}
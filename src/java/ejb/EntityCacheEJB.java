@@ -0,0 +1,147 @@
+package ejb;
+
+import dto.CacheRegionStatistics;
+import ejbLocal.EntityCacheEJBLocal;
+import exception.ReadException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.Local;
+import javax.ejb.Stateless;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * EJB class for managing the second-level cache of the persistence unit.
+ *
+ * @author Janam
+ */
+@Stateless
+@Local(EntityCacheEJBLocal.class)
+public class EntityCacheEJB implements EntityCacheEJBLocal {
+
+    /**
+     * Logger for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger("javafxserverside");
+
+    /**
+     * Entity manager object.
+     */
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Registry of the current JTA transaction.
+     */
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    /**
+     * Evicts a collection cache region now and again when the current
+     * transaction completes.
+     *
+     * @param role The collection role.
+     */
+    @Override
+    public void evictCollectionRegion(final String role) {
+        final SessionFactory sessionFactory = getSessionFactory();
+        sessionFactory.getCache().evictCollectionRegion(role);
+        if (transactionRegistry.getTransactionKey() != null) {
+            transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    sessionFactory.getCache().evictCollectionRegion(role);
+                }
+            });
+        }
+        LOGGER.log(Level.FINE, "EntityCache: Evicted collection region {0}.", role);
+    }
+
+    /**
+     * Discards every cached result of a query cache region.
+     *
+     * @param region The query cache region.
+     */
+    @Override
+    public void evictQueryRegion(String region) {
+        getSessionFactory().getCache().evictQueryRegion(region);
+        LOGGER.log(Level.INFO, "EntityCache: Evicted query region {0}.", region);
+    }
+
+    /**
+     * Reads the hit/miss metrics of a single cache region.
+     *
+     * @param region The cache region.
+     * @return The {@link CacheRegionStatistics} of the region, or null if
+     * the region does not exist.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public CacheRegionStatistics getRegionStatistics(String region) throws ReadException {
+        try {
+            SecondLevelCacheStatistics statistics = getSessionFactory().getStatistics().getSecondLevelCacheStatistics(region);
+            return statistics == null ? null : toStatistics(region, statistics);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "EntityCache: Exception reading cache region statistics:", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the hit/miss metrics of every second-level cache region.
+     *
+     * @return A List of {@link CacheRegionStatistics} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public List<CacheRegionStatistics> getStatistics() throws ReadException {
+        List<CacheRegionStatistics> regions = new ArrayList<>();
+        try {
+            Statistics statistics = getSessionFactory().getStatistics();
+            for (String name : statistics.getSecondLevelCacheRegionNames()) {
+                regions.add(toStatistics(name, statistics.getSecondLevelCacheStatistics(name)));
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "EntityCache: Exception reading cache statistics:", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+        return regions;
+    }
+
+    /**
+     * Copies the metrics of a cache region to a DTO.
+     *
+     * @param name The name of the region.
+     * @param region The Hibernate statistics of the region.
+     * @return The {@link CacheRegionStatistics} of the region.
+     */
+    private static CacheRegionStatistics toStatistics(String name, SecondLevelCacheStatistics region) {
+        CacheRegionStatistics entry = new CacheRegionStatistics();
+        entry.setRegion(name);
+        entry.setHitCount(region.getHitCount());
+        entry.setMissCount(region.getMissCount());
+        entry.setPutCount(region.getPutCount());
+        entry.setElementCountInMemory(region.getElementCountInMemory());
+        return entry;
+    }
+
+    /**
+     * @return the Hibernate session factory of the persistence unit
+     */
+    private SessionFactory getSessionFactory() {
+        return em.unwrap(Session.class).getSessionFactory();
+    }
+}
@@ -0,0 +1,39 @@
+package ejb;
+
+import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+
+/**
+ * Helper for the optimistic locking of the versioned entities.
+ *
+ * An update with a version only succeeds if it is still the stored one. An
+ * update without a version, sent by clients that do not know about versions,
+ * overwrites whatever is stored, as before the entities were versioned: it is
+ * given the stored version just before being merged.
+ *
+ * @author Janam
+ */
+final class EntityVersions {
+
+    private EntityVersions() {
+    }
+
+    /**
+     * Reads the stored version of an entity, without loading it.
+     *
+     * @param em The entity manager.
+     * @param entity The entity name, such as "City".
+     * @param idAttribute The name of the id attribute.
+     * @param id The id of the entity.
+     * @return The stored version, or null if there is no such entity.
+     */
+    static Long current(EntityManager em, String entity, String idAttribute, Object id) {
+        try {
+            return em.createQuery("SELECT e.version FROM " + entity + " e WHERE e." + idAttribute + " = :id", Long.class)
+                    .setParameter("id", id)
+                    .getSingleResult();
+        } catch (NoResultException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ejb;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of mails, used by {@link MailRegistry} to answer "this mail is
+ * not registered" without reading the database.
+ *
+ * The filter never gives a false "no": a mail that was added is always
+ * reported as possibly present. A mail that was not added is reported as
+ * possibly present with the false positive rate the filter was sized for.
+ * Mails cannot be removed, so the filter is rebuilt from the database instead.
+ * Mails are compared in lower case, like the case insensitive collation of
+ * the user table.
+ *
+ * The bits are kept in an {@link AtomicLongArray}, so mails can be added and
+ * checked by several threads at the same time without locking.
+ *
+ * @author Janam
+ */
+final class MailBloomFilter {
+
+    /**
+     * The bits of the filter.
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * Number of bits of the filter.
+     */
+    private final long bitCount;
+
+    /**
+     * Number of bits set for each mail.
+     */
+    private final int hashCount;
+
+    /**
+     * Number of mails the filter was sized for.
+     */
+    private final long capacity;
+
+    /**
+     * Number of mails added.
+     */
+    private final AtomicLong added = new AtomicLong();
+
+    /**
+     * Creates an empty filter for the given number of mails.
+     *
+     * @param capacity The number of mails the filter is sized for.
+     * @param falsePositiveRate The false positive rate when the filter holds
+     * that number of mails, between 0 and 1.
+     */
+    MailBloomFilter(long capacity, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate out of range: " + falsePositiveRate);
+        }
+        this.capacity = Math.max(1, capacity);
+        long m = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+        this.bits = new AtomicLongArray(Math.max(1, words));
+        this.bitCount = (long) bits.length() * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * Math.log(2)));
+    }
+
+    /**
+     * Adds a mail to the filter.
+     *
+     * @param mail The mail.
+     */
+    void add(String mail) {
+        long hash1 = hash(mail);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+        added.incrementAndGet();
+    }
+
+    /**
+     * Tells whether a mail may have been added to the filter.
+     *
+     * @param mail The mail.
+     * @return False if the mail was certainly not added, true if it may have
+     * been.
+     */
+    boolean mightContain(String mail) {
+        long hash1 = hash(mail);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of mails the filter was sized for.
+     */
+    long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of mails added, counting repeated mails again.
+     */
+    long getAdded() {
+        return added.get();
+    }
+
+    /**
+     * Hashes the lower case form of a mail with 64-bit FNV-1a followed by a
+     * finalizer that spreads the bits.
+     *
+     * @param mail The mail.
+     * @return The hash of the mail.
+     */
+    private static long hash(String mail) {
+        String key = mail.toLowerCase(Locale.ROOT);
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 64-bit finalizer of MurmurHash3.
+     *
+     * @param value The value to be mixed.
+     * @return The mixed value.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
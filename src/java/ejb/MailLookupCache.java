@@ -0,0 +1,335 @@
+package ejb;
+
+import entities.User;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.hibernate.Hibernate;
+
+/**
+ * Bounded cache of which mails are registered, and as which kind of user,
+ * shared by {@link UserManagerEJB}, {@link CustomerManagerEJB} and
+ * {@link MailRegistry}.
+ *
+ * It follows the W-TinyLFU policy: new mails enter a small LRU window, and a
+ * mail evicted from the window only replaces the least recently used mail of
+ * the main area if it has been asked for more often, as counted by a
+ * count-min sketch that is halved periodically. A burst of one-off mails,
+ * like a scanner probing random addresses, cannot push the hot mails out.
+ *
+ * Only the class of the user is kept, never the entity: a known mail is still
+ * loaded by the caller, from the second-level cache of {@link User}, so its
+ * trips are always current. The cache answers an unknown mail, or a mail of
+ * another kind of user, without loading anything. Unknown mails are kept with
+ * a short TTL. Every creation and deletion of a user must call
+ * {@link #invalidate(String)}.
+ *
+ * @author Janam
+ */
+final class MailLookupCache {
+
+    /**
+     * Logger for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger("javafxserverside");
+
+    /**
+     * Time a registered mail is kept.
+     */
+    private static final long POSITIVE_TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * Time an unknown mail is kept.
+     */
+    private static final long NEGATIVE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * JNDI name of the transaction synchronization registry.
+     */
+    private static final String REGISTRY_NAME = "java:comp/TransactionSynchronizationRegistry";
+
+    /**
+     * The cache used by the server.
+     */
+    static final MailLookupCache INSTANCE = new MailLookupCache(Integer.getInteger("g3crud.mailCache.size", 10_000));
+
+    /**
+     * Loads a user from the database.
+     */
+    interface Loader {
+
+        /**
+         * @param mail The mail of the user.
+         * @return The user, or null if there is none.
+         */
+        User load(String mail);
+    }
+
+    /**
+     * Recently added mails, in access order.
+     */
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Mails that won admission, in access order.
+     */
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int windowMax;
+
+    private final int mainMax;
+
+    private final FrequencySketch sketch;
+
+    /**
+     * Incremented on every invalidation, so a load that started before it is
+     * not cached.
+     */
+    private long stamp;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries Maximum number of mails cached.
+     */
+    MailLookupCache(int maxEntries) {
+        windowMax = Math.max(1, maxEntries / 100);
+        mainMax = Math.max(1, maxEntries - windowMax);
+        sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * Returns the user with the given mail if it is of the given type. The
+     * user is only loaded if the cache does not know the mail is unknown or
+     * of another type.
+     *
+     * @param <T> The type of the user.
+     * @param mail The mail of the user.
+     * @param type The type of the user.
+     * @param loader Loads the user.
+     * @return The user, or null if there is none of that type.
+     */
+    <T extends User> T get(String mail, Class<T> type, Loader loader) {
+        Entry entry = lookup(mail);
+        if (entry != null && (entry.type == null || !type.isAssignableFrom(entry.type))) {
+            return null;
+        }
+        User user = entry != null ? loader.load(mail) : load(mail, loader);
+        return type.isInstance(user) ? type.cast(user) : null;
+    }
+
+    /**
+     * Tells whether there is a user with the given mail. The user is only
+     * loaded if the cache does not know the mail.
+     *
+     * @param mail The mail of the user.
+     * @param loader Loads the user.
+     * @return True if there is a user with that mail.
+     */
+    boolean isRegistered(String mail, Loader loader) {
+        Entry entry = lookup(mail);
+        if (entry != null) {
+            return entry.type != null;
+        }
+        return load(mail, loader) != null;
+    }
+
+    /**
+     * Counts a lookup of a mail and returns its entry, if it has not expired.
+     */
+    private synchronized Entry lookup(String mail) {
+        sketch.increment(mail);
+        Entry entry = window.get(mail);
+        if (entry == null) {
+            entry = main.get(mail);
+        }
+        if (entry != null && System.nanoTime() - entry.expiresAt >= 0) {
+            window.remove(mail);
+            main.remove(mail);
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Loads a user and caches its class, unless the mail was invalidated
+     * while it was being loaded.
+     */
+    private User load(String mail, Loader loader) {
+        long readStamp;
+        synchronized (this) {
+            readStamp = stamp;
+        }
+        User user = loader.load(mail);
+        Class<?> type = user == null ? null : Hibernate.getClass(user);
+        long expiresAt = System.nanoTime() + (user == null ? NEGATIVE_TTL_NANOS : POSITIVE_TTL_NANOS);
+        synchronized (this) {
+            if (stamp == readStamp) {
+                admit(mail, new Entry(type, expiresAt));
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Forgets a mail now and again when the current transaction completes, so
+     * a lookup that read the user before the commit is not kept.
+     *
+     * @param mail The mail of the user.
+     */
+    void invalidate(final String mail) {
+        remove(mail);
+        afterCompletion(() -> remove(mail));
+    }
+
+    /**
+     * Puts a loaded entry in the window, moving the window victim to the main
+     * area if it is more frequent than the main victim.
+     */
+    private void admit(String mail, Entry entry) {
+        main.remove(mail);
+        window.put(mail, entry);
+        if (window.size() <= windowMax) {
+            return;
+        }
+        Map.Entry<String, Entry> candidate = eldest(window);
+        window.remove(candidate.getKey());
+        if (main.size() < mainMax) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        Map.Entry<String, Entry> victim = eldest(main);
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+            main.remove(victim.getKey());
+            main.put(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private static Map.Entry<String, Entry> eldest(LinkedHashMap<String, Entry> map) {
+        Iterator<Map.Entry<String, Entry>> iterator = map.entrySet().iterator();
+        return iterator.next();
+    }
+
+    private synchronized void remove(String mail) {
+        stamp++;
+        window.remove(mail);
+        main.remove(mail);
+    }
+
+    /**
+     * Runs an action when the current JTA transaction completes, if any.
+     */
+    private static void afterCompletion(final Runnable action) {
+        try {
+            TransactionSynchronizationRegistry registry = (TransactionSynchronizationRegistry) new InitialContext().lookup(REGISTRY_NAME);
+            if (registry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+                registry.registerInterposedSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        action.run();
+                    }
+                });
+            }
+        } catch (NamingException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "MailLookupCache: no transaction to follow.", e);
+        }
+    }
+
+    /**
+     * A cached lookup. A null type is an unknown mail.
+     */
+    private static final class Entry {
+
+        private final Class<?> type;
+
+        private final long expiresAt;
+
+        Entry(Class<?> type, long expiresAt) {
+            this.type = type;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often each mail was
+     * asked for. All counters are halved after a sample of lookups, so old
+     * popularity fades.
+     */
+    private static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+
+        private static final int MAX_COUNT = 15;
+
+        private static final int[] SEEDS = {0x97CB3127, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+
+        private final int mask;
+
+        private final int sampleSize;
+
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int width = Integer.highestOneBit(Math.max(16, maxEntries - 1) * 2);
+            counters = new byte[DEPTH][width];
+            mask = width - 1;
+            sampleSize = 10 * Math.max(16, maxEntries);
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x45D9F3B;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package ejb;
+
+import ejbLocal.MailOutboxEJBLocal;
+import encryption.EncryptionImplementation;
+import encryption.SignInCache;
+import entities.MailOutbox;
+import entities.MailOutboxStatus;
+import exception.CreateException;
+import exception.ReadException;
+import exception.UpdateException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ejb.Stateless;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+
+/**
+ * EJB class for managing the recovery email outbox.
+ *
+ * @author Janam
+ */
+@Stateless
+public class MailOutboxEJB implements MailOutboxEJBLocal {
+
+    /**
+     * Logger for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger("emailRecovery");
+
+    /**
+     * Maximum number of attempts before a message is discarded.
+     */
+    private static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * Delay before the first retry. It is doubled after every failed attempt.
+     */
+    private static final long BASE_BACKOFF_MILLIS = 10_000L;
+
+    /**
+     * Maximum delay between two attempts.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 30 * 60_000L;
+
+    /**
+     * Time a claimed message is reserved for the worker that claimed it. If
+     * the message is still SENDING after it, another worker can claim it.
+     */
+    private static final long CLAIM_LEASE_MILLIS = 5 * 60_000L;
+
+    /**
+     * Entity manager object.
+     */
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Writes a recovery email to the outbox in the current transaction. The
+     * password is stored encrypted with the RSA public key of the server.
+     * Messages to the same recipient that have not been claimed yet are
+     * discarded, so an older password cannot replace this one when it is
+     * sent later.
+     *
+     * @param recipient The email address the message is sent to.
+     * @param password The generated password to be sent.
+     * @param passwordHash The hash of the password, written to the user once
+     * the message is sent.
+     * @throws CreateException If there is any Exception during processing.
+     */
+    @Override
+    public void enqueue(String recipient, String password, String passwordHash) throws CreateException {
+        try {
+            Date now = new Date();
+            em.createNamedQuery("discardPendingMailOutbox")
+                    .setParameter("status", MailOutboxStatus.FAILED)
+                    .setParameter("recipient", recipient)
+                    .setParameter("pending", MailOutboxStatus.PENDING)
+                    .executeUpdate();
+            MailOutbox mail = new MailOutbox();
+            mail.setRecipient(recipient);
+            mail.setPassword(EncryptionImplementation.encryptWithPublicKey(password));
+            mail.setPasswordHash(passwordHash);
+            mail.setStatus(MailOutboxStatus.PENDING);
+            mail.setAttempts(0);
+            mail.setCreationDate(now);
+            mail.setNextAttempt(now);
+            em.persist(mail);
+            LOGGER.log(Level.INFO, "MailOutbox: Recovery email queued for {0}", recipient);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailOutbox: Exception queuing recovery email.{0}", e.getMessage());
+            throw new CreateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Claims the messages that are due to be sent. Stale SENDING messages,
+     * whose worker did not finish, are claimed again.
+     *
+     * @param max The maximum number of messages to claim.
+     * @return A List of claimed {@link MailOutbox} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public List<MailOutbox> claimDue(int max) throws ReadException {
+        List<MailOutbox> mails = null;
+        try {
+            Date now = new Date();
+            mails = em.createNamedQuery("findDueMailOutbox", MailOutbox.class)
+                    .setParameter("statuses", Arrays.asList(MailOutboxStatus.PENDING, MailOutboxStatus.SENDING))
+                    .setParameter("now", now)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setMaxResults(max)
+                    .getResultList();
+            Date lease = new Date(now.getTime() + CLAIM_LEASE_MILLIS);
+            for (MailOutbox mail : mails) {
+                mail.setStatus(MailOutboxStatus.SENDING);
+                mail.setNextAttempt(lease);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailOutbox: Exception claiming due emails.{0}", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+        return mails;
+    }
+
+    /**
+     * Marks a message as sent, writes the hash of its password to the user
+     * and clears both. Until then the user keeps the old password. If this
+     * fails, the message stays SENDING and is sent again when its claim
+     * expires.
+     *
+     * @param id The id of the message.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    @Override
+    public void markSent(Long id) throws UpdateException {
+        try {
+            MailOutbox mail = em.find(MailOutbox.class, id);
+            if (mail != null && mail.getStatus() == MailOutboxStatus.SENDING) {
+                if (mail.getPasswordHash() != null) {
+                    em.createNamedQuery("User.updatePassword")
+                            .setParameter("password", mail.getPasswordHash())
+                            .setParameter("mail", mail.getRecipient())
+                            .executeUpdate();
+                    SignInCache.getInstance().invalidate(mail.getRecipient());
+                    MailLookupCache.INSTANCE.invalidate(mail.getRecipient());
+                }
+                mail.setStatus(MailOutboxStatus.SENT);
+                mail.setSentDate(new Date());
+                mail.setPassword(null);
+                mail.setPasswordHash(null);
+                mail.setLastError(null);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailOutbox: Exception marking email as sent.{0}", e.getMessage());
+            throw new UpdateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Records a failed attempt. The next attempt is delayed with an
+     * exponential backoff, and the message is discarded after
+     * {@link #MAX_ATTEMPTS} attempts. The password of a discarded message is
+     * never written to the user, who keeps the old one.
+     *
+     * @param id The id of the message.
+     * @param error The error of the failed attempt.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    @Override
+    public void markFailed(Long id, String error) throws UpdateException {
+        try {
+            MailOutbox mail = em.find(MailOutbox.class, id);
+            if (mail == null) {
+                return;
+            }
+            int attempts = mail.getAttempts() + 1;
+            mail.setAttempts(attempts);
+            mail.setLastError(error == null || error.length() <= 500 ? error : error.substring(0, 500));
+            if (attempts >= MAX_ATTEMPTS) {
+                mail.setStatus(MailOutboxStatus.FAILED);
+                mail.setPassword(null);
+                mail.setPasswordHash(null);
+                LOGGER.log(Level.SEVERE, "MailOutbox: Recovery email {0} discarded after {1} attempts", new Object[]{id, attempts});
+            } else {
+                long backoff = Math.min(BASE_BACKOFF_MILLIS << (attempts - 1), MAX_BACKOFF_MILLIS);
+                mail.setStatus(MailOutboxStatus.PENDING);
+                mail.setNextAttempt(new Date(System.currentTimeMillis() + backoff));
+                LOGGER.log(Level.WARNING, "MailOutbox: Recovery email {0} failed, retrying in {1} ms", new Object[]{id, backoff});
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailOutbox: Exception marking email as failed.{0}", e.getMessage());
+            throw new UpdateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Counts the messages that are PENDING or SENDING.
+     *
+     * @return The number of messages waiting in the outbox.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public long countPending() throws ReadException {
+        try {
+            return em.createNamedQuery("countPendingMailOutbox", Long.class)
+                    .setParameter("statuses", Arrays.asList(MailOutboxStatus.PENDING, MailOutboxStatus.SENDING))
+                    .getSingleResult();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailOutbox: Exception counting pending emails.{0}", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+    }
+}
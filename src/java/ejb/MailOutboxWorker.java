@@ -0,0 +1,186 @@
+package ejb;
+
+import dto.MailOutboxStatistics;
+import ejbLocal.MailOutboxEJBLocal;
+import emailRecovery.Email;
+import emailRecovery.SmtpTransportPool;
+import encryption.EncryptionImplementation;
+import entities.MailOutbox;
+import exception.ReadException;
+import exception.UpdateException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
+
+/**
+ * Background worker that drains the recovery email outbox. Every few seconds
+ * it claims a batch of due messages and sends them on the managed executor
+ * pool, outside of any request or transaction.
+ *
+ * @author Janam
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MailOutboxWorker {
+
+    /**
+     * Logger for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger("emailRecovery");
+
+    /**
+     * Maximum number of messages being sent at the same time by this node.
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * EJB reference for the outbox.
+     */
+    @EJB
+    private MailOutboxEJBLocal outbox;
+
+    /**
+     * Pool of threads sending the messages.
+     */
+    @Resource
+    private ManagedExecutorService executor;
+
+    /**
+     * Messages being sent.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Messages sent.
+     */
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * Failed attempts.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Sum of the send latencies in milliseconds.
+     */
+    private final AtomicLong totalSendMillis = new AtomicLong();
+
+    /**
+     * Maximum send latency in milliseconds.
+     */
+    private final AtomicLong maxSendMillis = new AtomicLong();
+
+    /**
+     * Claims the due messages, up to the free slots of the batch, and hands
+     * them to the executor.
+     */
+    @Schedule(second = "*/5", minute = "*", hour = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void drain() {
+        SmtpTransportPool.getInstance().evictIdle();
+        int free = BATCH_SIZE - inFlight.get();
+        if (free <= 0) {
+            return;
+        }
+        List<MailOutbox> mails;
+        try {
+            mails = outbox.claimDue(free);
+        } catch (ReadException e) {
+            LOGGER.log(Level.SEVERE, "MailOutboxWorker: Exception claiming due emails.{0}", e.getMessage());
+            return;
+        }
+        for (final MailOutbox mail : mails) {
+            inFlight.incrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            send(mail);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The claim lease expires and the message is claimed again
+                inFlight.decrementAndGet();
+                LOGGER.log(Level.WARNING, "MailOutboxWorker: Executor rejected email {0}", mail.getId());
+            }
+        }
+    }
+
+    /**
+     * Decrypts the password of a message, sends it and records the result in
+     * the outbox.
+     *
+     * @param mail The message to be sent.
+     */
+    private void send(MailOutbox mail) {
+        long start = System.nanoTime();
+        try {
+            String password = EncryptionImplementation.decrypWithPrivateKey(mail.getPassword());
+            if (password == null) {
+                throw new IllegalStateException("The password of the email cannot be decrypted.");
+            }
+            Email.sendRecoveryEmail(mail.getRecipient(), password);
+            recordLatency((System.nanoTime() - start) / 1_000_000L);
+            sent.incrementAndGet();
+            outbox.markSent(mail.getId());
+        } catch (UpdateException e) {
+            LOGGER.log(Level.SEVERE, "MailOutboxWorker: Exception marking email {0} as sent.", mail.getId());
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            try {
+                outbox.markFailed(mail.getId(), e.getMessage());
+            } catch (UpdateException ex) {
+                LOGGER.log(Level.SEVERE, "MailOutboxWorker: Exception marking email {0} as failed.", mail.getId());
+            }
+        }
+    }
+
+    /**
+     * Adds a send latency to the metrics.
+     *
+     * @param millis The send latency in milliseconds.
+     */
+    private void recordLatency(long millis) {
+        totalSendMillis.addAndGet(millis);
+        long max = maxSendMillis.get();
+        while (millis > max && !maxSendMillis.compareAndSet(max, millis)) {
+            max = maxSendMillis.get();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the outbox metrics.
+     *
+     * @return The outbox metrics.
+     * @throws ReadException If the queue depth cannot be read.
+     */
+    public MailOutboxStatistics getStatistics() throws ReadException {
+        MailOutboxStatistics statistics = new MailOutboxStatistics();
+        long sentCount = sent.get();
+        statistics.setQueueDepth(outbox.countPending());
+        statistics.setInFlight(inFlight.get());
+        statistics.setSent(sentCount);
+        statistics.setFailed(failed.get());
+        statistics.setAverageSendMillis(sentCount == 0 ? 0 : totalSendMillis.get() / sentCount);
+        statistics.setMaxSendMillis(maxSendMillis.get());
+        return statistics;
+    }
+}
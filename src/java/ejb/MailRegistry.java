@@ -0,0 +1,213 @@
+package ejb;
+
+import entities.User;
+import exception.ReadException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * In-memory registry of the mails of the users, built from the user table at
+ * startup, so sign up and password recovery do not read the database for a
+ * mail that is certainly not registered.
+ *
+ * The mails are kept in a {@link MailBloomFilter}. New users are added to it
+ * as they are created. Deleted users cannot be removed from the filter, so it
+ * is rebuilt periodically, and sooner when many users were deleted or it holds
+ * more mails than it was sized for. Until the first build succeeds every mail
+ * is reported as possibly registered.
+ *
+ * The false positive rate is read from the "g3crud.mailFilter.falsePositiveRate"
+ * system property, 0.01 by default.
+ *
+ * @author Janam
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MailRegistry {
+
+    /**
+     * Logger for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger("javafxserverside");
+
+    /**
+     * False positive rate of the filter.
+     */
+    private static final double FALSE_POSITIVE_RATE = Double.parseDouble(
+            System.getProperty("g3crud.mailFilter.falsePositiveRate", "0.01"));
+
+    /**
+     * Maximum age of the filter before it is rebuilt.
+     */
+    private static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(
+            Long.getLong("g3crud.mailFilter.rebuildMinutes", 60L));
+
+    /**
+     * Minimum number of mails the filter is sized for.
+     */
+    private static final long MIN_CAPACITY = 1024;
+
+    /**
+     * Time a created mail is added again to the rebuilt filters, longer than
+     * the transaction that created it may take to commit.
+     */
+    private static final long RECENT_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * Entity manager object.
+     */
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * The current filter, or null if it has not been built yet.
+     */
+    private volatile MailBloomFilter filter;
+
+    /**
+     * Time the current filter was built.
+     */
+    private volatile long builtAt;
+
+    /**
+     * Users deleted since the current filter was built.
+     */
+    private final AtomicLong deletedSinceBuild = new AtomicLong();
+
+    /**
+     * Mails created recently, with the time they were added. A rebuild adds
+     * them again, because the transactions that created them may not have
+     * been committed when the user table was read.
+     */
+    private final Map<String, Long> recent = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the filter at startup. A failure is only logged, so the
+     * application starts and the filter is built by the next refresh.
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailRegistry: Exception building the mail filter.", e);
+        }
+    }
+
+    /**
+     * Rebuilds the filter if it is too old, many users were deleted since it
+     * was built, or it holds more mails than it was sized for.
+     */
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    public void refresh() {
+        MailBloomFilter current = filter;
+        if (current != null
+                && System.nanoTime() - builtAt < MAX_AGE_NANOS
+                && deletedSinceBuild.get() * 20 < current.getCapacity()
+                && current.getAdded() < current.getCapacity()) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailRegistry: Exception rebuilding the mail filter.", e);
+        }
+    }
+
+    /**
+     * Reads every mail of the user table into a new filter and replaces the
+     * current one. The filter is sized for twice the current number of users.
+     */
+    private void rebuild() {
+        long start = System.nanoTime();
+        long users = entityManager.createNamedQuery("User.countAll", Long.class).getSingleResult();
+        final MailBloomFilter built = new MailBloomFilter(Math.max(MIN_CAPACITY, users * 2), FALSE_POSITIVE_RATE);
+        long read = ResultStreams.scroll(entityManager, "User.findAllMails", String.class, built::add);
+        deletedSinceBuild.set(0);
+        filter = built;
+        builtAt = System.nanoTime();
+        for (Iterator<Map.Entry<String, Long>> it = recent.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Long> entry = it.next();
+            built.add(entry.getKey());
+            if (start - entry.getValue() > RECENT_NANOS) {
+                it.remove();
+            }
+        }
+        LOGGER.log(Level.INFO, "MailRegistry: Built the mail filter with {0} mails in {1} ms.",
+                new Object[]{read, TimeUnit.NANOSECONDS.toMillis(builtAt - start)});
+    }
+
+    /**
+     * Adds the mail of a user being created. It must be called before the
+     * transaction that creates the user commits.
+     *
+     * @param mail The mail of the user.
+     */
+    public void added(String mail) {
+        recent.put(mail, System.nanoTime());
+        MailBloomFilter current = filter;
+        if (current != null) {
+            current.add(mail);
+        }
+    }
+
+    /**
+     * Counts the deletion of a user. The mail stays in the filter until it is
+     * rebuilt, which only costs a database read when it is looked up.
+     *
+     * @param mail The mail of the user.
+     */
+    public void deleted(String mail) {
+        recent.remove(mail);
+        deletedSinceBuild.incrementAndGet();
+    }
+
+    /**
+     * Tells whether a mail may be registered, without reading the database.
+     *
+     * @param mail The mail.
+     * @return False if the mail is certainly not registered, true if it may
+     * be.
+     */
+    public boolean mightBeRegistered(String mail) {
+        MailBloomFilter current = filter;
+        return current == null || current.mightContain(mail);
+    }
+
+    /**
+     * Tells whether a mail is registered. The database is only read when the
+     * filter says the mail may be registered.
+     *
+     * @param mail The mail.
+     * @return True if there is a user with that mail.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public boolean isRegistered(String mail) throws ReadException {
+        if (!mightBeRegistered(mail)) {
+            return false;
+        }
+        try {
+            return MailLookupCache.INSTANCE.isRegistered(mail, key -> entityManager.find(User.class, key));
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "MailRegistry: Exception reading user " + mail, e);
+            throw new ReadException(e.getMessage());
+        }
+    }
+}
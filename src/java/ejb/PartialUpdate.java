@@ -0,0 +1,78 @@
+package ejb;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import javax.persistence.Query;
+
+/**
+ * Helper for writing only some columns of an entity with a single UPDATE
+ * statement, instead of merging the whole entity and its associations.
+ *
+ * The changes are given as a map of attribute names to values. The names are
+ * written into the statement, so they are always checked against the
+ * attributes that may be changed. The values are bound as parameters named
+ * like the attributes, except null values, which are written as NULL.
+ *
+ * @author Janam
+ */
+final class PartialUpdate {
+
+    private PartialUpdate() {
+    }
+
+    /**
+     * Checks that every change is of an attribute that may be changed.
+     *
+     * @param changes The changes, by attribute name.
+     * @param attributes The attributes that may be changed.
+     * @throws IllegalArgumentException If there are no changes or one of them
+     * is of another attribute.
+     */
+    static void check(Map<String, ?> changes, Set<String> attributes) {
+        if (changes.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to update.");
+        }
+        for (String attribute : changes.keySet()) {
+            if (!attributes.contains(attribute)) {
+                throw new IllegalArgumentException("Attribute cannot be updated: " + attribute);
+            }
+        }
+    }
+
+    /**
+     * Builds the SET clause of the changes of some attributes.
+     *
+     * @param alias The alias of the entity or table the attributes belong to.
+     * @param changes The changes, by attribute name.
+     * @param attributes The attributes of that entity or table.
+     * @return The assignments separated by commas, or an empty string if none
+     * of the changes is of those attributes.
+     */
+    static String assignments(String alias, Map<String, ?> changes, Set<String> attributes) {
+        StringJoiner set = new StringJoiner(", ");
+        for (String attribute : changes.keySet()) {
+            if (attributes.contains(attribute)) {
+                set.add(alias + "." + attribute + (changes.get(attribute) == null ? " = NULL" : " = :" + attribute));
+            }
+        }
+        return set.toString();
+    }
+
+    /**
+     * Binds the values of the changes that are not null to the parameters
+     * named like their attributes.
+     *
+     * @param query The UPDATE statement.
+     * @param changes The changes, by attribute name.
+     * @return The statement.
+     */
+    static Query bind(Query query, Map<String, ?> changes) {
+        for (Map.Entry<String, ?> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                query.setParameter(change.getKey(), change.getValue());
+            }
+        }
+        return query;
+    }
+}
@@ -0,0 +1,58 @@
+package ejb;
+
+import java.util.function.Supplier;
+import javax.persistence.EntityManager;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+/**
+ * Helper for running the find methods of the EJBs in read-only mode.
+ *
+ * The entities loaded while reading, including their eagerly fetched
+ * associations, are read-only: Hibernate keeps no snapshot of their state and
+ * never checks them for changes. When the persistence context is empty, as it
+ * is at the start of the transaction of a find method, nothing is flushed
+ * before the queries either. The previous settings are restored afterwards.
+ *
+ * The find methods keep the REQUIRED transaction attribute, because some of
+ * them are also called inside the transaction of their caller, which they
+ * have to join; the settings are restored so that transaction flushes as it
+ * did before. The entities loaded stay read-only until the transaction ends,
+ * though: changes made to them, or merged onto them, are never written. So
+ * reads made on the way to an update, like MailRegistry.isRegistered, do not
+ * use it.
+ *
+ * It does not help lazy loading: the persistence context is closed when the
+ * find method returns, before the entities are serialized.
+ *
+ * @author Janam
+ */
+final class ReadOnly {
+
+    private ReadOnly() {
+    }
+
+    /**
+     * Runs a read in read-only mode.
+     *
+     * @param <T> The type of the result.
+     * @param em The entity manager.
+     * @param reader The read.
+     * @return The result of the read.
+     */
+    static <T> T read(EntityManager em, Supplier<T> reader) {
+        Session session = em.unwrap(Session.class);
+        boolean readOnly = session.isDefaultReadOnly();
+        FlushMode flushMode = session.getFlushMode();
+        session.setDefaultReadOnly(true);
+        if (session.getStatistics().getEntityCount() == 0 && session.getStatistics().getCollectionCount() == 0) {
+            session.setFlushMode(FlushMode.MANUAL);
+        }
+        try {
+            return reader.get();
+        } finally {
+            session.setFlushMode(flushMode);
+            session.setDefaultReadOnly(readOnly);
+        }
+    }
+}
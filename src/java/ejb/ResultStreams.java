@@ -0,0 +1,64 @@
+package ejb;
+
+import java.util.function.Consumer;
+import javax.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * Helper for reading large result sets row by row with a server-side cursor,
+ * instead of loading the whole list in the persistence context.
+ *
+ * @author Janam
+ */
+final class ResultStreams {
+
+    /**
+     * Number of rows fetched from the database at a time.
+     */
+    static final int FETCH_SIZE = 500;
+
+    /**
+     * Number of rows after which the persistence context is cleared.
+     */
+    static final int CLEAR_INTERVAL = 500;
+
+    private ResultStreams() {
+    }
+
+    /**
+     * Runs a named query with a forward-only cursor and hands every row to the
+     * consumer. The persistence context is cleared every
+     * {@link #CLEAR_INTERVAL} rows, so the memory used does not depend on the
+     * number of rows.
+     *
+     * @param <T> The type of the rows.
+     * @param em The entity manager.
+     * @param namedQuery The name of the query.
+     * @param type The type of the rows.
+     * @param consumer The consumer of the rows.
+     * @return The number of rows read.
+     */
+    static <T> long scroll(EntityManager em, String namedQuery, Class<T> type, Consumer<? super T> consumer) {
+        Session session = em.unwrap(Session.class);
+        ScrollableResults results = session.getNamedQuery(namedQuery)
+                .setFetchSize(FETCH_SIZE)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        long count = 0;
+        try {
+            while (results.next()) {
+                consumer.accept(type.cast(results.get(0)));
+                if (++count % CLEAR_INTERVAL == 0) {
+                    session.clear();
+                }
+            }
+        } finally {
+            results.close();
+        }
+        return count;
+    }
+}
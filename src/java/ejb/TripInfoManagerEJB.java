@@ -1,5 +1,7 @@
 package ejb;
 
+import dto.TripInfoPartition;
+import dto.TripInfoSummary;
 import ejbLocal.TripInfoManagerEJBLocal;
 import entities.Customer;
 import entities.Trip;
@@ -8,13 +10,19 @@ import entities.TripInfoId;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
 
 /**
@@ -30,12 +38,24 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
      */
     private static final Logger LOGGER = Logger.getLogger("javafxserverside");
 
+    /**
+     * Number of TripInfos sent to the database in each JDBC batch by the
+     * import. It matches hibernate.jdbc.batch_size.
+     */
+    private static final int FLUSH_INTERVAL = 50;
+
     /**
      * Entity manager object.
      */
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * Context of the current call.
+     */
+    @Resource
+    private SessionContext context;
+
     /**
      * Finds a {@link TripInfo} by its Id.
      *
@@ -48,7 +68,7 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         TripInfo tripInfo = null;
         try {
             LOGGER.info("TripInfoManager: Finding tripInfo by id.");
-            tripInfo = em.find(TripInfo.class, tripInfoId);
+            tripInfo = ReadOnly.read(em, () -> em.find(TripInfo.class, tripInfoId));
             if (tripInfo != null) {
                 LOGGER.log(Level.INFO, "TripInfoManager: TripInfo found {0}", tripInfo.getTripInfoId());
             }
@@ -71,9 +91,9 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         List<TripInfo> tripInfos = null;
         try {
             LOGGER.info("TripInfoManager: Finding all tripInfos by customer.");
-            tripInfos = em.createNamedQuery("findAllTripInfoByCustomer")
+            tripInfos = ReadOnly.read(em, () -> em.createNamedQuery("findAllTripInfoByCustomer")
                     .setParameter("customer", customer)
-                    .getResultList();
+                    .getResultList());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripInfoManager: Exception finding all tripInfos by customer:", e.getMessage());
             throw new ReadException(e.getMessage());
@@ -93,9 +113,9 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         List<TripInfo> tripInfos = null;
         try {
             LOGGER.info("TripInfoManager: Finding all tripInfos by trip.");
-            tripInfos = em.createNamedQuery("findAllTripInfoByTrip")
+            tripInfos = ReadOnly.read(em, () -> em.createNamedQuery("findAllTripInfoByTrip")
                     .setParameter("trip", trip)
-                    .getResultList();
+                    .getResultList());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripInfoManager: Exception finding all tripInfos by trip:", e.getMessage());
             throw new ReadException(e.getMessage());
@@ -103,6 +123,62 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         return tripInfos;
     }
 
+    /**
+     * Finds a page of {@link TripInfo} objects of a Trip ordered by customer
+     * id, starting after the given customer id.
+     *
+     * @param trip The Trip for which to retrieve TripInfo objects.
+     * @param afterCustomerId The customer id the page starts after, or null
+     * for the first page.
+     * @param maxResults The maximum number of TripInfo objects in the page.
+     * @return A List of {@link TripInfo} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public List<TripInfo> findTripInfoPageByTrip(Trip trip, String afterCustomerId, int maxResults) throws ReadException {
+        List<TripInfo> tripInfos = null;
+        try {
+            LOGGER.info("TripInfoManager: Finding page of tripInfos by trip.");
+            tripInfos = ReadOnly.read(em, () -> em.createNamedQuery("findTripInfoPageByTrip", TripInfo.class)
+                    .setParameter("trip", trip)
+                    .setParameter("after", afterCustomerId == null ? "" : afterCustomerId)
+                    .setMaxResults(maxResults)
+                    .getResultList());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripInfoManager: Exception finding page of tripInfos by trip:", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+        return tripInfos;
+    }
+
+    /**
+     * Finds a page of {@link TripInfo} objects of a Customer ordered by trip
+     * id, starting after the given trip id.
+     *
+     * @param customer The Customer for which to retrieve TripInfo objects.
+     * @param afterTripId The trip id the page starts after, or null for the
+     * first page.
+     * @param maxResults The maximum number of TripInfo objects in the page.
+     * @return A List of {@link TripInfo} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public List<TripInfo> findTripInfoPageByCustomer(Customer customer, Integer afterTripId, int maxResults) throws ReadException {
+        List<TripInfo> tripInfos = null;
+        try {
+            LOGGER.info("TripInfoManager: Finding page of tripInfos by customer.");
+            tripInfos = ReadOnly.read(em, () -> em.createNamedQuery("findTripInfoPageByCustomer", TripInfo.class)
+                    .setParameter("customer", customer)
+                    .setParameter("after", afterTripId == null ? 0 : afterTripId)
+                    .setMaxResults(maxResults)
+                    .getResultList());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripInfoManager: Exception finding page of tripInfos by customer:", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+        return tripInfos;
+    }
+
     /**
      * Updates the information of a TripInfo in the underlying application
      * storage.
@@ -114,9 +190,16 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
     public void updateTripInfo(TripInfo tripInfo) throws UpdateException {
         LOGGER.info("TripInfoManager: Updating tripInfo.");
         try {
+            tripInfo.refreshDurationDays();
+            if (tripInfo.getVersion() == null) {
+                tripInfo.setVersion(EntityVersions.current(em, "TripInfo", "tripInfoId", tripInfo.getTripInfoId()));
+            }
             em.merge(tripInfo);
             em.flush();
             LOGGER.info("TripInfoManager: TripInfo updated.");
+        } catch (OptimisticLockException e) {
+            LOGGER.log(Level.WARNING, "TripInfoManager: Stale version updating tripInfo {0}.", tripInfo.getTripInfoId());
+            throw new StaleVersionException(e.getMessage());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripInfoManager: Exception updating tripInfo.{0}", e.getMessage());
             throw new UpdateException(e.getMessage());
@@ -135,6 +218,7 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         try {
             tripInfo = em.merge(tripInfo);
             em.remove(tripInfo);
+            CustomerTripCounter.add(em, tripInfo.getTripInfoId().getCustomerId(), -1);
             LOGGER.info("TripInfoManager: TripInfo deleted.");
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripInfoManager: Exception deleting tripInfo.{0}", e.getMessage());
@@ -153,7 +237,12 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
     public void createTripInfo(TripInfo tripInfo) throws CreateException {
         LOGGER.info("TripInfoManager: Creating tripInfo.");
         try {
+            tripInfo.refreshDurationDays();
             em.persist(tripInfo);
+            // A missing trip or customer, or an existing TripInfo, must fail
+            // here as a CreateException and not at the commit
+            em.flush();
+            CustomerTripCounter.add(em, tripInfo.getTripInfoId().getCustomerId(), 1);
             LOGGER.info("TripInfoManager: TripInfo created.");
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripInfoManager: Exception creating tripInfo.{0}", e.getMessage());
@@ -161,6 +250,43 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         }
     }
 
+    /**
+     * Creates several TripInfos in a single transaction. The persistence
+     * context is flushed and cleared every {@link #FLUSH_INTERVAL} TripInfos,
+     * and the trip counter of each customer is updated once per call.
+     *
+     * @param tripInfos The {@link TripInfo} objects to be created.
+     * @throws CreateException If there is any Exception during processing.
+     */
+    @Override
+    public void importTripInfos(List<TripInfo> tripInfos) throws CreateException {
+        LOGGER.log(Level.INFO, "TripInfoManager: Importing {0} tripInfos.", tripInfos.size());
+        try {
+            Map<String, Integer> tripsByCustomer = new HashMap<>();
+            int count = 0;
+            for (TripInfo tripInfo : tripInfos) {
+                tripInfo.refreshDurationDays();
+                em.persist(tripInfo);
+                tripsByCustomer.merge(tripInfo.getTripInfoId().getCustomerId(), 1, Integer::sum);
+                if (++count % FLUSH_INTERVAL == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            em.flush();
+            em.clear();
+            for (Map.Entry<String, Integer> entry : tripsByCustomer.entrySet()) {
+                CustomerTripCounter.add(em, entry.getKey(), entry.getValue());
+            }
+            LOGGER.info("TripInfoManager: TripInfos imported.");
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripInfoManager: Exception importing tripInfos.{0}", e.getMessage());
+            // None of the TripInfos of the call must be stored
+            context.setRollbackOnly();
+            throw new CreateException(e.getMessage());
+        }
+    }
+
     /**
      * Finds all active {@link TripInfo} objects associated with a given
      * Customer.
@@ -176,10 +302,10 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         try {
             LOGGER.info("TripInfoManager: Finding active tripInfos by customer.");
             Date date = new Date();
-            tripInfos = em.createNamedQuery("findActiveTripInfoByCustomer")
+            tripInfos = ReadOnly.read(em, () -> em.createNamedQuery("findActiveTripInfoByCustomer")
                     .setParameter("customer", customer)
                     .setParameter("date", date)
-                    .getResultList();
+                    .getResultList());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripInfoManager: Exception finding active tripInfos by customer:", e.getMessage());
             throw new ReadException(e.getMessage());
@@ -202,14 +328,44 @@ public class TripInfoManagerEJB implements TripInfoManagerEJBLocal {
         try {
             LOGGER.info("TripInfoManager: Finding inactive tripInfos by customer.");
             Date date = new Date();
-            tripInfos = em.createNamedQuery("findInactiveTripInfoByCustomer")
+            tripInfos = ReadOnly.read(em, () -> em.createNamedQuery("findInactiveTripInfoByCustomer")
                     .setParameter("customer", customer)
                     .setParameter("date", date)
-                    .getResultList();
+                    .getResultList());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripInfoManager: Exception finding inactive tripInfos by customer:", e.getMessage());
             throw new ReadException(e.getMessage());
         }
         return tripInfos;
     }
+
+    /**
+     * Finds the active and inactive TripInfos of a Customer with a single
+     * query on the (customerId, lastDate) index, without loading the Customer.
+     *
+     * @param mail The mail of the Customer.
+     * @return The {@link TripInfoPartition} of the Customer.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public TripInfoPartition findPartitionedTripInfoByCustomer(String mail) throws ReadException {
+        TripInfoPartition partition = new TripInfoPartition(mail, new Date());
+        try {
+            LOGGER.info("TripInfoManager: Finding partitioned tripInfos by customer.");
+            List<TripInfoSummary> tripInfos = em.createNamedQuery("findTripInfoSummariesByCustomerId", TripInfoSummary.class)
+                    .setParameter("customerId", mail)
+                    .getResultList();
+            for (TripInfoSummary tripInfo : tripInfos) {
+                if (tripInfo.getLastDate().after(partition.getDate())) {
+                    partition.getActive().add(tripInfo);
+                } else {
+                    partition.getInactive().add(tripInfo);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripInfoManager: Exception finding partitioned tripInfos by customer:", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+        return partition;
+    }
 }
@@ -1,18 +1,26 @@
 package ejb;
 
+import dto.TripSummary;
+import ejbLocal.EntityCacheEJBLocal;
 import ejbLocal.TripManagerEJBLocal;
 import entities.EnumTripType;
 import entities.Trip;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 
 /**
  * EJB class for managing Trip entity CRUD operations.
@@ -33,6 +41,13 @@ public class TripManagerEJB implements TripManagerEJBLocal {
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * EJB reference for the second-level cache. City.trips is the inverse
+     * side of trip_cities, so it has to be evicted on every Trip write.
+     */
+    @EJB
+    private EntityCacheEJBLocal entityCache;
+
     /**
      * Finds a {@link Trip} by its id.
      *
@@ -45,7 +60,7 @@ public class TripManagerEJB implements TripManagerEJBLocal {
         Trip trip = null;
         try {
             LOGGER.info("TripManager: Finding trip by id.");
-            trip = em.find(Trip.class, id);
+            trip = ReadOnly.read(em, () -> em.find(Trip.class, id));
             if (trip != null) {
                 LOGGER.log(Level.INFO, "TripManager: Trip found {0}", trip.getId());
             }
@@ -68,7 +83,7 @@ public class TripManagerEJB implements TripManagerEJBLocal {
         List<Trip> trips = null;
         try {
             LOGGER.info("TripManager: Reading all trips.");
-            trips = em.createNamedQuery("findAllTrips").getResultList();
+            trips = ReadOnly.read(em, () -> em.createNamedQuery("findAllTrips").getResultList());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripManager: Exception reading all trips:", e.getMessage());
             throw new ReadException(e.getMessage());
@@ -76,6 +91,46 @@ public class TripManagerEJB implements TripManagerEJBLocal {
         return trips;
     }
 
+    /**
+     * Finds the scalar columns of all trips with a single query, without
+     * loading their cities or TripInfos.
+     *
+     * @return A List of {@link TripSummary} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public List<TripSummary> findTripSummaries() throws ReadException {
+        List<TripSummary> trips = null;
+        try {
+            LOGGER.info("TripManager: Reading all trip summaries.");
+            trips = em.createNamedQuery("findTripSummaries", TripSummary.class).getResultList();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripManager: Exception reading all trip summaries:", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+        return trips;
+    }
+
+    /**
+     * Reads all the {@link Trip} objects one by one with a server-side cursor
+     * and hands them to a consumer. The persistence context is cleared
+     * periodically.
+     *
+     * @param consumer The consumer of the trips.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public void streamAllTrips(Consumer<Trip> consumer) throws ReadException {
+        try {
+            LOGGER.info("TripManager: Streaming all trips.");
+            long count = ResultStreams.scroll(em, "findAllTrips", Trip.class, consumer);
+            LOGGER.log(Level.INFO, "TripManager: {0} trips streamed.", count);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripManager: Exception streaming all trips:", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+    }
+
     /**
      * Finds a List of {@link Trip} objects containing data for all trips with a
      * certain tripType value.
@@ -89,9 +144,9 @@ public class TripManagerEJB implements TripManagerEJBLocal {
         List<Trip> trips = null;
         try {
             LOGGER.info("TripManager: Reading trips by tripType.");
-            trips = em.createNamedQuery("findTripsByTripType")
+            trips = ReadOnly.read(em, () -> em.createNamedQuery("findTripsByTripType")
                     .setParameter("tripType", tripType)
-                    .getResultList();
+                    .getResultList());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripManager: Exception reading trips by tripType.", e.getMessage());
             throw new ReadException(e.getMessage());
@@ -99,6 +154,31 @@ public class TripManagerEJB implements TripManagerEJBLocal {
         return trips;
     }
 
+    /**
+     * Finds a page of {@link Trip} objects ordered by id, starting after the
+     * given id.
+     *
+     * @param afterId The id the page starts after, or null for the first page.
+     * @param maxResults The maximum number of trips in the page.
+     * @return A List of {@link Trip} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    @Override
+    public List<Trip> findTripsPage(Integer afterId, int maxResults) throws ReadException {
+        List<Trip> trips = null;
+        try {
+            LOGGER.info("TripManager: Reading page of trips.");
+            trips = ReadOnly.read(em, () -> em.createNamedQuery("findTripPage", Trip.class)
+                    .setParameter("after", afterId == null ? 0 : afterId)
+                    .setMaxResults(maxResults)
+                    .getResultList());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripManager: Exception reading page of trips.", e.getMessage());
+            throw new ReadException(e.getMessage());
+        }
+        return trips;
+    }
+
     /**
      * Creates a Trip and stores it in the underlying application storage.
      *
@@ -110,6 +190,7 @@ public class TripManagerEJB implements TripManagerEJBLocal {
         LOGGER.info("TripManager: Creating trip.");
         try {
             em.persist(trip);
+            entityCache.evictCollectionRegion(EntityCacheEJBLocal.CITY_TRIPS);
             LOGGER.info("TripManager: Trip created.");
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripManager: Exception creating trip.{0}", e.getMessage());
@@ -127,15 +208,61 @@ public class TripManagerEJB implements TripManagerEJBLocal {
     public void updateTrip(Trip trip) throws UpdateException {
         LOGGER.info("TripManager: Updating trip.");
         try {
+            if (trip.getVersion() == null) {
+                trip.setVersion(EntityVersions.current(em, "Trip", "id", trip.getId()));
+            }
             em.merge(trip);
             em.flush();
+            entityCache.evictCollectionRegion(EntityCacheEJBLocal.CITY_TRIPS);
             LOGGER.info("TripManager: Trip updated.");
+        } catch (OptimisticLockException e) {
+            LOGGER.log(Level.WARNING, "TripManager: Stale version updating trip {0}.", trip.getId());
+            throw new StaleVersionException(e.getMessage());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripManager: Exception updating trip.{0}", e.getMessage());
             throw new UpdateException(e.getMessage());
         }
     }
 
+    /**
+     * Changes some attributes of a trip with a single JPQL UPDATE. The cities
+     * of the trip do not change, so no collection region is evicted.
+     *
+     * @param tripId The id of the trip.
+     * @param version The version the changes were made from, or null.
+     * @param changes The new values, by attribute name.
+     * @return The new version of the trip, or null if it does not exist.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    @Override
+    public Long patchTrip(Integer tripId, Long version, Map<String, Object> changes) throws UpdateException {
+        LOGGER.info("TripManager: Patching trip.");
+        try {
+            PartialUpdate.check(changes, PATCH_ATTRIBUTES);
+            Query update = PartialUpdate.bind(em.createQuery("UPDATE Trip t SET "
+                    + PartialUpdate.assignments("t", changes, PATCH_ATTRIBUTES)
+                    + ", t.version = t.version + 1 WHERE t.id = :tripId"
+                    + (version == null ? "" : " AND t.version = :version")), changes)
+                    .setParameter("tripId", tripId);
+            if (version != null) {
+                update.setParameter("version", version);
+            }
+            int updated = update.executeUpdate();
+            Long current = EntityVersions.current(em, "Trip", "id", tripId);
+            if (updated == 0 && current != null) {
+                LOGGER.log(Level.WARNING, "TripManager: Stale version patching trip {0}.", tripId);
+                throw new StaleVersionException("Trip " + tripId + " is at version " + current);
+            }
+            LOGGER.log(Level.INFO, "TripManager: Patched {0} trip.", updated);
+            return updated == 0 ? null : current;
+        } catch (StaleVersionException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "TripManager: Exception patching trip.{0}", e.getMessage());
+            throw new UpdateException(e.getMessage());
+        }
+    }
+
     /**
      * Deletes a trip's data in the underlying application storage.
      *
@@ -147,7 +274,9 @@ public class TripManagerEJB implements TripManagerEJBLocal {
         LOGGER.info("TripManager: Deleting trip.");
         try {
             trip = em.merge(trip);
+            CustomerTripCounter.removeTrip(em, trip.getId());
             em.remove(trip);
+            entityCache.evictCollectionRegion(EntityCacheEJBLocal.CITY_TRIPS);
             LOGGER.info("TripManager: Trip deleted.");
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "TripManager: Exception deleting trip.{0}", e.getMessage());
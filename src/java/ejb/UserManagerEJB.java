@@ -1,15 +1,19 @@
 package ejb;
 
 import ejbLocal.UserManagerEJBLocal;
+import encryption.SignInCache;
 import entities.User;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
 
 /**
@@ -27,6 +31,12 @@ public class UserManagerEJB implements UserManagerEJBLocal {
     @PersistenceContext
     private EntityManager entityManager;
 
+    /**
+     * EJB reference for the registry of the mails in use.
+     */
+    @EJB
+    private MailRegistry mailRegistry;
+
     /**
      * Logger for logging messages related to user management operations.
      */
@@ -42,6 +52,8 @@ public class UserManagerEJB implements UserManagerEJBLocal {
     public void createUser(User user) throws CreateException {
         try {
             entityManager.persist(user);
+            mailRegistry.added(user.getMail());
+            MailLookupCache.INSTANCE.invalidate(user.getMail());
             LOGGER.log(Level.INFO, "Created user with email: {0}", user.getMail());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error creating user", e);
@@ -59,8 +71,17 @@ public class UserManagerEJB implements UserManagerEJBLocal {
     @Override
     public void updateUser(User user) throws UpdateException {
         try {
+            if (user.getVersion() == null) {
+                user.setVersion(EntityVersions.current(entityManager, "User", "mail", user.getMail()));
+            }
             entityManager.merge(user);
+            entityManager.flush();
+            SignInCache.getInstance().invalidate(user.getMail());
+            MailLookupCache.INSTANCE.invalidate(user.getMail());
             LOGGER.log(Level.INFO, "Updated user with email: {0}", user.getMail());
+        } catch (OptimisticLockException e) {
+            LOGGER.log(Level.WARNING, "Stale version updating user {0}", user.getMail());
+            throw new StaleVersionException(e.getMessage());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error updating customer", e);
             throw new UpdateException(e.getMessage());
@@ -79,6 +100,9 @@ public class UserManagerEJB implements UserManagerEJBLocal {
             User user = entityManager.find(User.class, userId);
             if (user != null) {
                 entityManager.remove(user);
+                SignInCache.getInstance().invalidate(userId);
+                MailLookupCache.INSTANCE.invalidate(userId);
+                mailRegistry.deleted(userId);
                 LOGGER.log(Level.INFO, "Deleted user with id: {0}", userId);
 
             } else {
@@ -91,17 +115,21 @@ public class UserManagerEJB implements UserManagerEJBLocal {
     }
 
     /**
-     * Retrieves a user by their email address.
+     * Retrieves a user by their email address. The {@link MailLookupCache}
+     * answers an unknown mail without reading the database. An unknown mail
+     * is not an error.
      *
      * @param mail The email address of the user.
-     * @return The user with the specified email address.
+     * @return The user with the specified email address, or null if there is
+     * none.
      * @throws ReadException If there is an error retrieving the user by email.
      */
     @Override
     public User findUserByMail(String mail) throws ReadException {
         User user = null;
         try {
-            user = entityManager.createNamedQuery("User.findByEmail", User.class).setParameter("email", mail).getSingleResult();
+            user = MailLookupCache.INSTANCE.get(mail, User.class,
+                    key -> ReadOnly.read(entityManager, () -> entityManager.find(User.class, key)));
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error retrieving customer by mail: " + mail, e);
             throw new ReadException(e.getMessage());
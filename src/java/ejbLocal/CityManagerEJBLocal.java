@@ -1,12 +1,20 @@
 package ejbLocal;
 
+import dto.CitySummary;
 import entities.City;
 import entities.PopulationType;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import javax.ejb.Local;
 
 /**
@@ -17,6 +25,12 @@ import javax.ejb.Local;
 @Local
 public interface CityManagerEJBLocal {
 
+    /**
+     * Attributes of a City that {@link #patchCity(Long, Long, Map)} may change.
+     */
+    public static final Set<String> PATCH_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("name", "country", "populationType", "weatherType")));
+
     /**
      * Creates a City and stores it in the underlying application storage.
      *
@@ -26,13 +40,40 @@ public interface CityManagerEJBLocal {
     public void createCity(City city) throws CreateException;
 
     /**
-     * Updates a City's data in the underlying application storage.
+     * Creates several Cities in a single transaction. Either all of them are
+     * stored, and their CityId is set, or none.
+     *
+     * @param cities The {@link City} objects containing the City data.
+     * @throws CreateException If there is any Exception during processing.
+     */
+    public void createCities(List<City> cities) throws CreateException;
+
+    /**
+     * Updates a City's data in the underlying application storage. A City
+     * with a version is only updated if it is still the stored version. A
+     * City without a version overwrites the stored one.
      *
      * @param city The {@link City} object containing the trip data.
+     * @throws StaleVersionException If the version is not the stored one.
      * @throws UpdateException If there is any Exception during processing.
      */
     public void updateCity(City city) throws UpdateException;
 
+    /**
+     * Changes some attributes of a City with a single UPDATE statement,
+     * without loading it nor its trips.
+     *
+     * @param cityId The id of the City.
+     * @param version The version the changes were made from, or null to
+     * change any version.
+     * @param changes The new values, by attribute name. Only the
+     * {@link #PATCH_ATTRIBUTES} may be given.
+     * @return The new version of the City, or null if it does not exist.
+     * @throws StaleVersionException If the version is not the stored one.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    public Long patchCity(Long cityId, Long version, Map<String, Object> changes) throws UpdateException;
+
     /**
      * Deletes a City's data in the underlying application storage.
      *
@@ -41,6 +82,16 @@ public interface CityManagerEJBLocal {
      */
     public void deleteCity(City city) throws DeleteException;
 
+    /**
+     * Deletes Cities by CityId, detaching them from their trips, without
+     * loading them.
+     *
+     * @param cityIds The CityIds of the Cities to be deleted.
+     * @return The number of Cities deleted.
+     * @throws DeleteException If there is any Exception during processing.
+     */
+    public int deleteCitiesById(List<Long> cityIds) throws DeleteException;
+
     /**
      * Finds a {@link City} by its id.
      *
@@ -59,6 +110,23 @@ public interface CityManagerEJBLocal {
      */
     public List<City> findAllCities() throws ReadException;
 
+    /**
+     * Finds the scalar columns of all Cities, without loading their trips.
+     *
+     * @return A List of {@link CitySummary} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<CitySummary> findCitySummaries() throws ReadException;
+
+    /**
+     * Reads all the {@link City} objects one by one with a server-side cursor
+     * and hands them to a consumer, without loading them all in memory.
+     *
+     * @param consumer The consumer of the cities.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public void streamAllCities(Consumer<City> consumer) throws ReadException;
+
     /**
      * Finds a List of {@link City} objects containing data for all cities with
      * a certain country value.
@@ -79,4 +147,16 @@ public interface CityManagerEJBLocal {
      */
     public List<City> findAllCitiesBypopulationType(PopulationType populationType) throws ReadException;
 
+    /**
+     * Finds a page of {@link City} objects ordered by CityId, starting after
+     * the given CityId.
+     *
+     * @param afterCityId The CityId the page starts after, or null for the
+     * first page.
+     * @param maxResults The maximum number of cities in the page.
+     * @return A List of {@link City} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<City> findCitiesPage(Long afterCityId, int maxResults) throws ReadException;
+
 }
@@ -4,9 +4,16 @@ import entities.Customer;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
 import javax.ejb.Local;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Local interface for managing Customer entities.
@@ -14,6 +21,13 @@ import java.util.List;
 @Local
 public interface CustomerManagerEJBLocal {
 
+    /**
+     * Attributes of a customer that {@link #patchCustomer(String, Long, Map)} may
+     * change.
+     */
+    public static final Set<String> PATCH_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("name", "zip", "address", "phone", "password")));
+
     /**
      * Retrieves all customers.
      *
@@ -22,11 +36,34 @@ public interface CustomerManagerEJBLocal {
      */
     public List<Customer> findAllCustomers() throws ReadException;
 
+    /**
+     * Reads all the customers one by one with a server-side cursor and hands
+     * them to a consumer, without loading them all in memory.
+     *
+     * @param consumer The consumer of the customers.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public void streamAllCustomers(Consumer<Customer> consumer) throws ReadException;
+
+    /**
+     * Retrieves a page of customers ordered by email address, starting after
+     * the given email address.
+     *
+     * @param afterMail The email address the page starts after, or null for
+     * the first page.
+     * @param maxResults The maximum number of customers in the page.
+     * @return A list of customers.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<Customer> findCustomersPage(String afterMail, int maxResults) throws ReadException;
+
     /**
      * Retrieves a customer by their email address.
      *
      * @param mail The email address of the customer.
-     * @return The customer with the specified email address.
+     * @return The customer with the specified email address, or null if
+     * there is none. It is shared with other callers and must not be
+     * modified.
      * @throws ReadException If there is any Exception during processing.
      */
     public Customer findCustomerByMail(String mail) throws ReadException;
@@ -39,6 +76,14 @@ public interface CustomerManagerEJBLocal {
      */
     public List<Customer> findCustomersWithTrips() throws ReadException;
 
+    /**
+     * Counts the customers with associated trips.
+     *
+     * @return The number of customers with associated trips.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public long countCustomersWithTrips() throws ReadException;
+
     /**
      * Retrieves all customers ordered by they day they where created.
      *
@@ -65,14 +110,33 @@ public interface CustomerManagerEJBLocal {
     public void createCustomer(Customer customer) throws CreateException;
 
     /**
-     * Updates an existing customer.
+     * Updates an existing customer. A customer with a version is only updated
+     * if it is still the stored version. A customer without a version
+     * overwrites the stored one.
      *
      * @param customer The customer to be updated.
      * @param encrypted Shows if the password is encrypted or not
+     * @throws StaleVersionException If the version is not the stored one.
      * @throws UpdateException If there is any Exception during processing.
      */
     public void updateCustomer(Customer customer, boolean encrypted) throws UpdateException;
 
+    /**
+     * Changes some attributes of a customer with a single UPDATE statement,
+     * without loading it nor its TripInfos.
+     *
+     * @param mail The mail of the customer.
+     * @param version The version the changes were made from, or null to
+     * change any version.
+     * @param changes The new values, by attribute name. Only the
+     * {@link #PATCH_ATTRIBUTES} may be given, and the password must already
+     * be hashed.
+     * @return The new version of the customer, or null if it does not exist.
+     * @throws StaleVersionException If the version is not the stored one.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    public Long patchCustomer(String mail, Long version, Map<String, Object> changes) throws UpdateException;
+
     /**
      * Deletes a customer by their ID.
      *
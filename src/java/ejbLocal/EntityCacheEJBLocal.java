@@ -0,0 +1,68 @@
+package ejbLocal;
+
+import dto.CacheRegionStatistics;
+import exception.ReadException;
+import java.util.List;
+import javax.ejb.Local;
+
+/**
+ * EJB Local Interface for managing the second-level cache of the persistence
+ * unit.
+ *
+ * @author Janam
+ */
+@Local
+public interface EntityCacheEJBLocal {
+
+    /**
+     * Cache region of the trips of each City. It is the inverse side of the
+     * trip_cities association, so Hibernate does not refresh it when a Trip
+     * changes its cities.
+     */
+    public static final String CITY_TRIPS = "entities.City.trips";
+
+    /**
+     * Cache region of the cities of each Trip.
+     */
+    public static final String TRIP_CITIES = "entities.Trip.cities";
+
+    /**
+     * Query cache region of the City filter queries.
+     */
+    public static final String CITY_FILTER_QUERIES = "query.cityFilter";
+
+    /**
+     * Evicts a collection cache region now and again when the current
+     * transaction completes, so a concurrent reader cannot put back the state
+     * it read before the commit.
+     *
+     * @param role The collection role, such as {@link #CITY_TRIPS}.
+     */
+    public void evictCollectionRegion(String role);
+
+    /**
+     * Discards every cached result of a query cache region.
+     *
+     * @param region The query cache region, such as
+     * {@link #CITY_FILTER_QUERIES}.
+     */
+    public void evictQueryRegion(String region);
+
+    /**
+     * Reads the hit/miss metrics of a single cache region.
+     *
+     * @param region The cache region.
+     * @return The {@link CacheRegionStatistics} of the region, or null if
+     * the region does not exist.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public CacheRegionStatistics getRegionStatistics(String region) throws ReadException;
+
+    /**
+     * Reads the hit/miss metrics of every second-level cache region.
+     *
+     * @return A List of {@link CacheRegionStatistics} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<CacheRegionStatistics> getStatistics() throws ReadException;
+}
@@ -0,0 +1,66 @@
+package ejbLocal;
+
+import entities.MailOutbox;
+import exception.CreateException;
+import exception.ReadException;
+import exception.UpdateException;
+import java.util.List;
+import javax.ejb.Local;
+
+/**
+ * EJB Local Interface for managing the recovery email outbox.
+ *
+ * @author Janam
+ */
+@Local
+public interface MailOutboxEJBLocal {
+
+    /**
+     * Writes a recovery email to the outbox in the current transaction.
+     *
+     * @param recipient The email address the message is sent to.
+     * @param password The generated password to be sent.
+     * @param passwordHash The hash of the password, written to the user once
+     * the message is sent.
+     * @throws CreateException If there is any Exception during processing.
+     */
+    public void enqueue(String recipient, String password, String passwordHash) throws CreateException;
+
+    /**
+     * Claims the messages that are due to be sent, so no other worker sends
+     * them at the same time.
+     *
+     * @param max The maximum number of messages to claim.
+     * @return A List of claimed {@link MailOutbox} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<MailOutbox> claimDue(int max) throws ReadException;
+
+    /**
+     * Marks a message as sent and makes its password the password of the
+     * user.
+     *
+     * @param id The id of the message.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    public void markSent(Long id) throws UpdateException;
+
+    /**
+     * Records a failed attempt to send a message and schedules the next
+     * attempt, or discards the message when there are no attempts left.
+     *
+     * @param id The id of the message.
+     * @param error The error of the failed attempt.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    public void markFailed(Long id, String error) throws UpdateException;
+
+    /**
+     * Counts the messages that have not been sent yet.
+     *
+     * @return The number of messages waiting in the outbox.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public long countPending() throws ReadException;
+
+}
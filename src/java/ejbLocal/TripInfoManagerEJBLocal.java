@@ -1,5 +1,6 @@
 package ejbLocal;
 
+import dto.TripInfoPartition;
 import entities.Customer;
 import entities.Trip;
 import entities.TripInfo;
@@ -7,6 +8,7 @@ import entities.TripInfoId;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
 import java.util.List;
 import javax.ejb.Local;
@@ -46,11 +48,39 @@ public interface TripInfoManagerEJBLocal {
      */
     public List<TripInfo> findAllTripInfoByTrip(Trip trip) throws ReadException;
 
+    /**
+     * Finds a page of {@link TripInfo} objects of a Trip ordered by customer
+     * id, starting after the given customer id.
+     *
+     * @param trip The Trip for which to retrieve TripInfo objects.
+     * @param afterCustomerId The customer id the page starts after, or null
+     * for the first page.
+     * @param maxResults The maximum number of TripInfo objects in the page.
+     * @return A List of {@link TripInfo} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<TripInfo> findTripInfoPageByTrip(Trip trip, String afterCustomerId, int maxResults) throws ReadException;
+
+    /**
+     * Finds a page of {@link TripInfo} objects of a Customer ordered by trip
+     * id, starting after the given trip id.
+     *
+     * @param customer The Customer for which to retrieve TripInfo objects.
+     * @param afterTripId The trip id the page starts after, or null for the
+     * first page.
+     * @param maxResults The maximum number of TripInfo objects in the page.
+     * @return A List of {@link TripInfo} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<TripInfo> findTripInfoPageByCustomer(Customer customer, Integer afterTripId, int maxResults) throws ReadException;
+
     /**
      * Updates the information of a TripInfo in the underlying application
-     * storage.
+     * storage. A TripInfo with a version is only updated if it is still the
+     * stored version. A TripInfo without a version overwrites the stored one.
      *
      * @param tripInfo The {@link TripInfo} object containing the updated data.
+     * @throws StaleVersionException If the version is not the stored one.
      * @throws UpdateException If there is any Exception during processing.
      */
     public void updateTripInfo(TripInfo tripInfo) throws UpdateException;
@@ -72,6 +102,16 @@ public interface TripInfoManagerEJBLocal {
      */
     public void createTripInfo(TripInfo tripInfo) throws CreateException;
 
+    /**
+     * Creates several TripInfos in a single transaction, keeping their
+     * duration and the trip counter of their customers. Either all of them are
+     * stored or none.
+     *
+     * @param tripInfos The {@link TripInfo} objects to be created.
+     * @throws CreateException If there is any Exception during processing.
+     */
+    public void importTripInfos(List<TripInfo> tripInfos) throws CreateException;
+
     /**
      * Finds all active {@link TripInfo} objects associated with a given
      * Customer.
@@ -93,4 +133,14 @@ public interface TripInfoManagerEJBLocal {
      * @throws ReadException If there is any Exception during processing.
      */
     public List<TripInfo> findInactiveTripInfoByCustomer(Customer customer) throws ReadException;
+
+    /**
+     * Finds the active and inactive TripInfos of a Customer with a single
+     * query, without loading the Customer.
+     *
+     * @param mail The mail of the Customer.
+     * @return The {@link TripInfoPartition} of the Customer.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public TripInfoPartition findPartitionedTripInfoByCustomer(String mail) throws ReadException;
 }
@@ -1,12 +1,20 @@
 package ejbLocal;
 
+import dto.TripSummary;
 import entities.EnumTripType;
 import entities.Trip;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import javax.ejb.Local;
 
 /**
@@ -17,6 +25,12 @@ import javax.ejb.Local;
 @Local
 public interface TripManagerEJBLocal {
 
+    /**
+     * Attributes of a trip that {@link #patchTrip(Integer, Long, Map)} may change.
+     */
+    public static final Set<String> PATCH_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("tripType", "description")));
+
     /**
      * Finds a {@link Trip} by its id.
      *
@@ -35,13 +49,31 @@ public interface TripManagerEJBLocal {
     public void createTrip(Trip trip) throws CreateException;
 
     /**
-     * Updates a trip's data in the underlying application storage.
+     * Updates a trip's data in the underlying application storage. A trip
+     * with a version is only updated if it is still the stored version. A
+     * trip without a version overwrites the stored one.
      *
      * @param trip The {@link Trip} object containing the trip data.
+     * @throws StaleVersionException If the version is not the stored one.
      * @throws UpdateException If there is any Exception during processing.
      */
     public void updateTrip(Trip trip) throws UpdateException;
 
+    /**
+     * Changes some attributes of a trip with a single UPDATE statement,
+     * without loading it nor its cities and TripInfos.
+     *
+     * @param tripId The id of the trip.
+     * @param version The version the changes were made from, or null to
+     * change any version.
+     * @param changes The new values, by attribute name. Only the
+     * {@link #PATCH_ATTRIBUTES} may be given.
+     * @return The new version of the trip, or null if it does not exist.
+     * @throws StaleVersionException If the version is not the stored one.
+     * @throws UpdateException If there is any Exception during processing.
+     */
+    public Long patchTrip(Integer tripId, Long version, Map<String, Object> changes) throws UpdateException;
+
     /**
      * Deletes a trip's data in the underlying application storage.
      *
@@ -59,6 +91,24 @@ public interface TripManagerEJBLocal {
      */
     public List<Trip> findAllTrips() throws ReadException;
 
+    /**
+     * Finds the scalar columns of all trips, without loading their cities or
+     * TripInfos.
+     *
+     * @return A List of {@link TripSummary} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<TripSummary> findTripSummaries() throws ReadException;
+
+    /**
+     * Reads all the {@link Trip} objects one by one with a server-side cursor
+     * and hands them to a consumer, without loading them all in memory.
+     *
+     * @param consumer The consumer of the trips.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public void streamAllTrips(Consumer<Trip> consumer) throws ReadException;
+
     /**
      * Finds a List of {@link Trip} objects containing data for all trips with a
      * certain tripType value.
@@ -69,4 +119,15 @@ public interface TripManagerEJBLocal {
      */
     public List<Trip> findTripsByTripType(EnumTripType tripType) throws ReadException;
 
+    /**
+     * Finds a page of {@link Trip} objects ordered by id, starting after the
+     * given id.
+     *
+     * @param afterId The id the page starts after, or null for the first page.
+     * @param maxResults The maximum number of trips in the page.
+     * @return A List of {@link Trip} objects.
+     * @throws ReadException If there is any Exception during processing.
+     */
+    public List<Trip> findTripsPage(Integer afterId, int maxResults) throws ReadException;
+
 }
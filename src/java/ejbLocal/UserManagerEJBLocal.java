@@ -4,6 +4,7 @@ import entities.User;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
 import javax.ejb.Local;
 
@@ -24,9 +25,12 @@ public interface UserManagerEJBLocal {
     public void createUser(User user) throws CreateException;
 
     /**
-     * Updates an existing customer.
+     * Updates an existing customer. A user with a version is only updated if
+     * it is still the stored version. A user without a version overwrites the
+     * stored one.
      *
      * @param user The customer to be updated.
+     * @throws StaleVersionException If the version is not the stored one.
      * @throws UpdateException If there is any Exception during processing.
      */
     public void updateUser(User user) throws UpdateException;
@@ -43,7 +47,8 @@ public interface UserManagerEJBLocal {
      * Retrieves a customer by their email address.
      *
      * @param mail The email address of the customer.
-     * @return The user with the specified email address.
+     * @return The user with the specified email address, or null if there
+     * is none. It is shared with other callers and must not be modified.
      * @throws ReadException If there is any Exception during processing.
      */
     public User findUserByMail(String mail) throws ReadException;
@@ -4,19 +4,20 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
-import java.util.Properties;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
-import encryption.EncryptionImplementation;
+import javax.mail.util.ByteArrayDataSource;
+import javax.activation.DataHandler;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -52,7 +53,7 @@ public class Email {
      * @throws IOException If an I/O error occurs while reading the input
      * stream.
      */
-    private static String inputStreamToString(InputStream inputStream) throws IOException {
+    static String inputStreamToString(InputStream inputStream) throws IOException {
         try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
 
             StringBuilder stringBuilder = new StringBuilder();
@@ -88,89 +89,11 @@ public class Email {
 
         final String newPassword;
 
-        // Load Private Key
-        InputStream fis = Email.class.getResourceAsStream("simetricKey.der");
-
         try {
 
-            String decryptedCredentials = EncryptionImplementation.descifrarCredentials(inputStreamToString(fis));
-
-            // Split credentials
-            String[] credentials = decryptedCredentials.split("=");
-            String SENDER_EMAIL = credentials[3];
-            String SENDER_PASSWORD = credentials[5];
-
-            final String ZOHO_HOST = "smtp.zoho.eu";
-            final String TLS_PORT = "897";
-            final String RECEIVER_EMAIL = emailUser;
-            newPassword = generateRandomPassword(Integer.parseInt(credentials[1]));
-
-            // protocol properties
-            Properties props = System.getProperties();
-            props.setProperty("mail.smtps.host", ZOHO_HOST);
-            props.setProperty("mail.smtp.port", TLS_PORT);
-            props.setProperty("mail.smtp.starttls.enable", "true");
-            props.setProperty("mail.smtps.auth", "true");
-
-            // close connection upon quit being sent
-            props.put("mail.smtps.quitwait", "false");
-
-            Session session = Session.getInstance(props, null);
-
-            // create the message
-            final MimeMessage msg = new MimeMessage(session);
-
-            // set recipients and content
-            msg.setFrom(new InternetAddress(SENDER_EMAIL));
-
-            msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(RECEIVER_EMAIL, false));
-
-            msg.setSubject("Email Recovery");
-
-            // Set HTML content
-            String emailBody = "<body style=\"font-size:16px;padding-top:20px;color:rgb(51,51,51);\">"
-                    + "<table style=\"width:100%;max-width:600px\" align=\"center\"><tr><td><br/>"
-                    + "<b style=\"font-size: 20px;\">G3CRUD</b><br/>"
-                    + "<br/>"
-                    + "Recently, we received a request to reset the account password associated with this email address. "
-                    + "We understand from time to time passwords are lost or forgotten and we are here to assist you.<br/>"
-                    + "<br/>"
-                    + "We recommend that you update your password as soon as possible. When choosing a new password, we suggest you secure your account security by selecting a unique password that you have not used on other websites. "
-                    + "Strong passwords contain more than eight characters and include small and capital letters, special characters and numbers.<br/>"
-                    + "<br/>"
-                    + "Your new generated login password is: <i><b>" + newPassword + "</b></i><br/>"
-                    + "<br/>"
-                    + "<br/>"
-                    + "<b>ADDITIONAL ASSISTANCE</b><br/>"
-                    + "<br/>"
-                    + "If you did not request a password reset, please notify Customer Support.<br/>"
-                    + "<br/>"
-                    + "Thank you for choosing G3CRUD.<br/>"
-                    + "<br/>"
-                    + "<br/>"
-                    + "<b>NOTE</b>: <i>Do not respond to this email. It does not accept incoming emails!</i>"
-                    + "</td></tr></table><br/>"
-                    + "<br/>"
-                    + "<br/>"
-                    + "<footer style=\"font-size:12px;line-height:150%;margin:0;text-align:center;color:rgb(51,51,51);\">This email was sent by:<br/>"
-                    + "<b>G3CRUD Customer Service</b><br/>"
-                    + "Calle Fanderia, 48901<br/>"
-                    + "Barakaldo, Bizkaia, Spain</footer><br/>"
-                    + "</body>";
-
-            msg.setContent(emailBody, "text/html; charset=utf-8");
-
-            msg.setSentDate(new Date());
-
-            // send the mail
-            Transport transport = session.getTransport("smtps");
-
-            // send the mail
-            transport.connect(ZOHO_HOST, SENDER_EMAIL, SENDER_PASSWORD);
-
-            transport.sendMessage(msg, msg.getAllRecipients());
+            newPassword = generateRecoveryPassword();
 
-            LOGGER.info("Zoho mail sent successfully");
+            sendRecoveryEmail(emailUser, newPassword);
 
         } catch (IOException | NumberFormatException | MessagingException e) {
 
@@ -181,6 +104,87 @@ public class Email {
 
     }
 
+    /**
+     * Generates a random recovery password with the length configured in the
+     * mail credentials.
+     *
+     * @return The randomly generated password.
+     * @throws IOException If the mail credentials cannot be read.
+     */
+    public static String generateRecoveryPassword() throws IOException {
+        return generateRandomPassword(MailCredentialsProvider.getCredentials().getPasswordLength());
+    }
+
+    /**
+     * Sends the account recovery email containing the given password.
+     *
+     * @param emailUser The email of the user to send the recovery email to.
+     * @param newPassword The new password to be sent in the email.
+     * @throws IOException If the mail credentials or template cannot be read.
+     * @throws MessagingException If the email cannot be sent.
+     */
+    public static void sendRecoveryEmail(String emailUser, String newPassword) throws IOException, MessagingException {
+        sendTemplateEmail(emailUser, MailTemplate.RECOVERY, Collections.singletonMap("password", newPassword));
+    }
+
+    /**
+     * Sends an email rendered from a {@link MailTemplate}.
+     *
+     * @param emailUser The email of the user to send the email to.
+     * @param templateName The name of the template.
+     * @param values The values of the template fields.
+     * @throws IOException If the mail credentials or template cannot be read.
+     * @throws MessagingException If the email cannot be sent.
+     */
+    public static void sendTemplateEmail(String emailUser, String templateName, Map<String, String> values) throws IOException, MessagingException {
+
+        // Credentials are decrypted once and kept in memory
+        MailCredentials credentials = MailCredentialsProvider.getCredentials();
+        String SENDER_EMAIL = credentials.getSender();
+        String SENDER_PASSWORD = credentials.getPassword();
+
+        final String RECEIVER_EMAIL = emailUser;
+
+        // Templates are parsed once, only the fields are rendered
+        MailTemplate template = MailTemplate.get(templateName);
+
+        // Connections are pooled and share the same session
+        SmtpTransportPool pool = SmtpTransportPool.getInstance();
+
+        // create the message
+        final MimeMessage msg = new MimeMessage(pool.getSession());
+
+        // set recipients and content
+        msg.setFrom(new InternetAddress(SENDER_EMAIL));
+
+        msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(RECEIVER_EMAIL, false));
+
+        msg.setSubject(template.renderSubject(values), "UTF-8");
+
+        // Set HTML content
+        msg.setDataHandler(new DataHandler(new ByteArrayDataSource(template.renderBody(values), "text/html; charset=utf-8")));
+
+        msg.setSentDate(new Date());
+
+        // send the mail on a pooled connection
+        Transport transport = pool.borrow(SENDER_EMAIL, SENDER_PASSWORD);
+
+        try {
+
+            transport.sendMessage(msg, msg.getAllRecipients());
+
+        } catch (MessagingException | RuntimeException e) {
+
+            pool.invalidate(transport);
+            throw e;
+        }
+
+        pool.release(transport, SENDER_EMAIL);
+
+        LOGGER.info("Zoho mail sent successfully");
+
+    }
+
     /**
      * This method generates a random password of a specified length and is
      * intended to be sent to a user's email for account-related purposes.
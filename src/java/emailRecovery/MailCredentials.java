@@ -0,0 +1,72 @@
+package emailRecovery;
+
+/**
+ * The {@code MailCredentials} class holds the decrypted credentials used to
+ * send the recovery emails. Instances are immutable.
+ *
+ * @author Janam
+ * @version 1.0
+ */
+public final class MailCredentials {
+
+    /**
+     * The email address of the sender.
+     */
+    private final String sender;
+
+    /**
+     * The password of the sender account.
+     */
+    private final String password;
+
+    /**
+     * The length of the generated recovery passwords.
+     */
+    private final int passwordLength;
+
+    /**
+     * Creates the credentials holder.
+     *
+     * @param sender The email address of the sender.
+     * @param password The password of the sender account.
+     * @param passwordLength The length of the generated recovery passwords.
+     */
+    public MailCredentials(String sender, String password, int passwordLength) {
+        this.sender = sender;
+        this.password = password;
+        this.passwordLength = passwordLength;
+    }
+
+    /**
+     * Parses the decrypted content of "mailCredentials.properties", which is
+     * split by "=" into the length, sender and password fields.
+     *
+     * @param decryptedCredentials The decrypted credentials text.
+     * @return The parsed credentials.
+     */
+    static MailCredentials parse(String decryptedCredentials) {
+        String[] credentials = decryptedCredentials.split("=");
+        return new MailCredentials(credentials[3], credentials[5], Integer.parseInt(credentials[1]));
+    }
+
+    /**
+     * @return The email address of the sender.
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * @return The password of the sender account.
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * @return The length of the generated recovery passwords.
+     */
+    public int getPasswordLength() {
+        return passwordLength;
+    }
+}
@@ -0,0 +1,143 @@
+package emailRecovery;
+
+import encryption.EncryptionImplementation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code MailCredentialsProvider} class decrypts the mail credentials once
+ * and keeps them in memory, so sending an email does not derive the AES key
+ * again.
+ *
+ * The credentials are decrypted again only when "simetricKey.der" or
+ * "mailCredentials.properties" change. The modification times of those
+ * resources are checked at most once every {@link #CHECK_INTERVAL_MILLIS}.
+ *
+ * @author Janam
+ * @version 1.0
+ */
+public final class MailCredentialsProvider {
+
+    //  Logger for the class.
+    private static final Logger LOGGER = Logger.getLogger("emailRecovery");
+
+    /**
+     * Minimum time between two checks of the resources modification time.
+     */
+    private static final long CHECK_INTERVAL_MILLIS = 60_000L;
+
+    /**
+     * The resource with the symmetric key.
+     */
+    private static final URL KEY_RESOURCE = Email.class.getResource("simetricKey.der");
+
+    /**
+     * The resource with the encrypted credentials.
+     */
+    private static final URL CREDENTIALS_RESOURCE = EncryptionImplementation.class.getResource("mailCredentials.properties");
+
+    /**
+     * The current credentials, or null if they have not been loaded yet.
+     */
+    private static volatile MailCredentials credentials;
+
+    /**
+     * Combined modification time of the resources the credentials were loaded
+     * from.
+     */
+    private static volatile long loadedVersion;
+
+    /**
+     * Time of the last modification check.
+     */
+    private static volatile long lastCheck;
+
+    private MailCredentialsProvider() {
+    }
+
+    /**
+     * Returns the decrypted mail credentials, decrypting them only on first
+     * use or after the resources have changed.
+     *
+     * @return The mail credentials.
+     * @throws IOException If the credentials cannot be read or decrypted.
+     */
+    public static MailCredentials getCredentials() throws IOException {
+        MailCredentials current = credentials;
+        long now = System.currentTimeMillis();
+        if (current != null && now - lastCheck < CHECK_INTERVAL_MILLIS) {
+            return current;
+        }
+        synchronized (MailCredentialsProvider.class) {
+            current = credentials;
+            if (current != null && now - lastCheck < CHECK_INTERVAL_MILLIS) {
+                return current;
+            }
+            long version = resourcesVersion();
+            if (current == null || version != loadedVersion) {
+                current = load();
+                credentials = current;
+                loadedVersion = version;
+                LOGGER.info("Mail credentials loaded");
+            }
+            lastCheck = now;
+            return current;
+        }
+    }
+
+    /**
+     * Decrypts and parses the credentials.
+     *
+     * @return The mail credentials.
+     * @throws IOException If the credentials cannot be read or decrypted.
+     */
+    private static MailCredentials load() throws IOException {
+        String decryptedCredentials;
+        try (InputStream fis = Email.class.getResourceAsStream("simetricKey.der")) {
+            decryptedCredentials = EncryptionImplementation.descifrarCredentials(Email.inputStreamToString(fis));
+        }
+        if (decryptedCredentials == null) {
+            throw new IOException("Mail credentials could not be decrypted");
+        }
+        try {
+            return MailCredentials.parse(decryptedCredentials);
+        } catch (RuntimeException e) {
+            throw new IOException("Mail credentials are not valid", e);
+        }
+    }
+
+    /**
+     * Combines the modification times of the key and credential resources.
+     *
+     * @return A value that changes whenever one of the resources changes.
+     */
+    private static long resourcesVersion() {
+        return 31 * lastModified(KEY_RESOURCE) + lastModified(CREDENTIALS_RESOURCE);
+    }
+
+    /**
+     * Returns the modification time of a resource.
+     *
+     * @param resource The resource.
+     * @return The modification time, or 0 if it is not known.
+     */
+    private static long lastModified(URL resource) {
+        if (resource == null) {
+            return 0L;
+        }
+        try {
+            URLConnection connection = resource.openConnection();
+            connection.setUseCaches(false);
+            long modified = connection.getLastModified();
+            connection.getInputStream().close();
+            return modified;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot check modification time of {0}", resource);
+            return 0L;
+        }
+    }
+}
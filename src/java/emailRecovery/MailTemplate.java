@@ -0,0 +1,252 @@
+package emailRecovery;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code MailTemplate} class is a precompiled HTML email template loaded
+ * from the "&lt;name&gt;Template.html" resource of this package.
+ *
+ * The first line of the resource is the subject, as "Subject: text", and the
+ * rest is the HTML body. Fields are written as ${field}. The template is
+ * parsed once: the static parts of the body are kept encoded as UTF-8 bytes,
+ * and only the fields are encoded and HTML-escaped when a message is
+ * rendered.
+ *
+ * @author Janam
+ * @version 1.0
+ */
+public final class MailTemplate {
+
+    /**
+     * Name of the account recovery template.
+     */
+    public static final String RECOVERY = "recovery";
+
+    /**
+     * Name of the generic notification template.
+     */
+    public static final String NOTIFICATION = "notification";
+
+    /**
+     * Loaded templates by name.
+     */
+    private static final Map<String, MailTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Static parts and field names of the subject, alternating, starting with
+     * a static part.
+     */
+    private final String[] subjectParts;
+
+    /**
+     * Static parts of the body encoded as UTF-8. There is one more static part
+     * than fields.
+     */
+    private final byte[][] bodySegments;
+
+    /**
+     * Names of the body fields, between the static parts.
+     */
+    private final String[] bodyFields;
+
+    /**
+     * Total length of the static parts of the body.
+     */
+    private final int staticLength;
+
+    /**
+     * Parses a template.
+     *
+     * @param subject The subject text.
+     * @param body The HTML body text.
+     */
+    private MailTemplate(String subject, String body) {
+        List<String> subjectList = split(subject);
+        this.subjectParts = subjectList.toArray(new String[subjectList.size()]);
+
+        List<String> bodyList = split(body);
+        this.bodySegments = new byte[bodyList.size() / 2 + 1][];
+        this.bodyFields = new String[bodyList.size() / 2];
+        int length = 0;
+        for (int i = 0; i < bodyList.size(); i++) {
+            if (i % 2 == 0) {
+                bodySegments[i / 2] = bodyList.get(i).getBytes(StandardCharsets.UTF_8);
+                length += bodySegments[i / 2].length;
+            } else {
+                bodyFields[i / 2] = bodyList.get(i);
+            }
+        }
+        this.staticLength = length;
+    }
+
+    /**
+     * Returns the template with the given name, loading it on first use.
+     *
+     * @param name The template name.
+     * @return The template.
+     * @throws IOException If the template resource cannot be read.
+     */
+    public static MailTemplate get(String name) throws IOException {
+        MailTemplate template = TEMPLATES.get(name);
+        if (template == null) {
+            template = load(name);
+            TEMPLATES.putIfAbsent(name, template);
+        }
+        return template;
+    }
+
+    /**
+     * Renders the subject with the given field values.
+     *
+     * @param values The field values.
+     * @return The subject.
+     */
+    public String renderSubject(Map<String, String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < subjectParts.length; i++) {
+            sb.append(i % 2 == 0 ? subjectParts[i] : value(values, subjectParts[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders the body with the given field values, which are HTML-escaped.
+     *
+     * @param values The field values.
+     * @return The body encoded as UTF-8.
+     */
+    public byte[] renderBody(Map<String, String> values) {
+        byte[][] fields = new byte[bodyFields.length][];
+        int length = staticLength;
+        for (int i = 0; i < bodyFields.length; i++) {
+            fields[i] = escapeHtml(value(values, bodyFields[i])).getBytes(StandardCharsets.UTF_8);
+            length += fields[i].length;
+        }
+        byte[] body = new byte[length];
+        int pos = 0;
+        for (int i = 0; i < bodySegments.length; i++) {
+            System.arraycopy(bodySegments[i], 0, body, pos, bodySegments[i].length);
+            pos += bodySegments[i].length;
+            if (i < fields.length) {
+                System.arraycopy(fields[i], 0, body, pos, fields[i].length);
+                pos += fields[i].length;
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Loads and parses a template resource.
+     *
+     * @param name The template name.
+     * @return The template.
+     * @throws IOException If the template resource cannot be read.
+     */
+    private static MailTemplate load(String name) throws IOException {
+        String text;
+        try (InputStream in = MailTemplate.class.getResourceAsStream(name + "Template.html")) {
+            if (in == null) {
+                throw new IOException("Mail template not found: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+        int newLine = text.indexOf('\n');
+        if (!text.startsWith("Subject:") || newLine < 0) {
+            throw new IOException("Mail template without subject: " + name);
+        }
+        return new MailTemplate(text.substring("Subject:".length(), newLine).trim(), text.substring(newLine + 1));
+    }
+
+    /**
+     * Splits a text into static parts and field names, alternating, starting
+     * and ending with a static part.
+     *
+     * @param text The template text.
+     * @return The parts.
+     */
+    private static List<String> split(String text) {
+        List<String> parts = new ArrayList<>();
+        int pos = 0;
+        int start;
+        while ((start = text.indexOf("${", pos)) >= 0) {
+            int end = text.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+            parts.add(text.substring(pos, start));
+            parts.add(text.substring(start + 2, end));
+            pos = end + 1;
+        }
+        parts.add(text.substring(pos));
+        return parts;
+    }
+
+    /**
+     * Returns the value of a field, or an empty string if it has none.
+     *
+     * @param values The field values.
+     * @param field The field name.
+     * @return The field value.
+     */
+    private static String value(Map<String, String> values, String field) {
+        String value = values.get(field);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Escapes the HTML special characters of a value.
+     *
+     * @param value The value.
+     * @return The escaped value.
+     */
+    private static String escapeHtml(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            switch (c) {
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#39;";
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (sb != null) {
+                if (replacement != null) {
+                    sb.append(replacement);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb == null ? value : sb.toString();
+    }
+}
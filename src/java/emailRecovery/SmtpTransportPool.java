@@ -0,0 +1,257 @@
+package emailRecovery;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * The {@code SmtpTransportPool} class keeps a bounded pool of connected and
+ * authenticated SMTP transports, so sending an email does not open a new
+ * connection, do a TLS handshake and log in every time.
+ *
+ * Transports are validated with a NOOP command when they are borrowed, and the
+ * ones idle for longer than the idle timeout are closed. The host, port and
+ * protocol can be overridden with the "g3crud.mail.host", "g3crud.mail.port"
+ * and "g3crud.mail.protocol" system properties, for example to point the
+ * server to a local SMTP server while testing.
+ *
+ * @author Janam
+ * @version 1.0
+ */
+public final class SmtpTransportPool {
+
+    //  Logger for the class.
+    private static final Logger LOGGER = Logger.getLogger("emailRecovery");
+
+    /**
+     * Maximum number of transports.
+     */
+    private static final int MAX_SIZE = Integer.getInteger("g3crud.mail.poolSize", 4);
+
+    /**
+     * Time after which an idle transport is closed.
+     */
+    private static final long MAX_IDLE_MILLIS = 30_000L;
+
+    /**
+     * Maximum time to wait for a free transport.
+     */
+    private static final long BORROW_TIMEOUT_MILLIS = 30_000L;
+
+    /**
+     * The pool used by the server, created on first use.
+     */
+    private static volatile SmtpTransportPool instance;
+
+    /**
+     * SMTP host.
+     */
+    private final String host;
+
+    /**
+     * SMTP port, or -1 for the default port of the protocol.
+     */
+    private final int port;
+
+    /**
+     * Protocol of the transports, "smtps" or "smtp".
+     */
+    private final String protocol;
+
+    /**
+     * Mail session shared by all the transports.
+     */
+    private final Session session;
+
+    /**
+     * Idle transports, the most recently used first.
+     */
+    private final Deque<PooledTransport> idle = new LinkedBlockingDeque<>();
+
+    /**
+     * Permits for borrowing transports. A transport is only created when there
+     * is no idle one, so the pool never holds more than its size.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Creates a pool of transports.
+     *
+     * @param host SMTP host.
+     * @param port SMTP port, or -1 for the default port of the protocol.
+     * @param protocol Protocol of the transports, "smtps" or "smtp".
+     * @param maxSize Maximum number of transports.
+     */
+    public SmtpTransportPool(String host, int port, String protocol, int maxSize) {
+        this.host = host;
+        this.port = port;
+        this.protocol = protocol;
+        this.permits = new Semaphore(maxSize, true);
+
+        // protocol properties
+        Properties props = new Properties();
+        props.setProperty("mail." + protocol + ".host", host);
+        props.setProperty("mail.smtp.starttls.enable", "true");
+        props.setProperty("mail." + protocol + ".auth", "true");
+
+        // close connection upon quit being sent
+        props.setProperty("mail." + protocol + ".quitwait", "false");
+
+        this.session = Session.getInstance(props, null);
+    }
+
+    /**
+     * Returns the pool used by the server.
+     *
+     * @return The transport pool.
+     */
+    public static SmtpTransportPool getInstance() {
+        SmtpTransportPool pool = instance;
+        if (pool == null) {
+            synchronized (SmtpTransportPool.class) {
+                pool = instance;
+                if (pool == null) {
+                    pool = new SmtpTransportPool(System.getProperty("g3crud.mail.host", "smtp.zoho.eu"),
+                            Integer.getInteger("g3crud.mail.port", -1),
+                            System.getProperty("g3crud.mail.protocol", "smtps"),
+                            MAX_SIZE);
+                    instance = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the mail session the messages must be created with.
+     *
+     * @return The mail session.
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Borrows a connected transport logged in as the given user. It must be
+     * given back with {@link #release(Transport, String)} or, if it failed,
+     * {@link #invalidate(Transport)}.
+     *
+     * @param user The user to log in with.
+     * @param password The password of the user.
+     * @return A connected transport.
+     * @throws MessagingException If no transport is free in time or the
+     * connection cannot be opened.
+     */
+    public Transport borrow(String user, String password) throws MessagingException {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("No SMTP transport available");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting for an SMTP transport", e);
+        }
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (pooled.isReusable(user, System.currentTimeMillis()) && pooled.transport.isConnected()) {
+                    return pooled.transport;
+                }
+                close(pooled.transport);
+            }
+            Transport transport = session.getTransport(protocol);
+            transport.connect(host, port, user, password);
+            return transport;
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a transport that can be reused.
+     *
+     * @param transport The borrowed transport.
+     * @param user The user the transport is logged in as.
+     */
+    public void release(Transport transport, String user) {
+        idle.offerFirst(new PooledTransport(transport, user));
+        permits.release();
+    }
+
+    /**
+     * Closes a borrowed transport that failed and must not be reused.
+     *
+     * @param transport The borrowed transport.
+     */
+    public void invalidate(Transport transport) {
+        close(transport);
+        permits.release();
+    }
+
+    /**
+     * Closes the transports that have been idle for too long.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledTransport> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledTransport pooled = it.next();
+            if (now - pooled.lastUsed > MAX_IDLE_MILLIS && idle.removeLastOccurrence(pooled)) {
+                close(pooled.transport);
+            }
+        }
+    }
+
+    /**
+     * Closes all the idle transports.
+     */
+    public void close() {
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled.transport);
+        }
+    }
+
+    /**
+     * Closes a transport, ignoring errors.
+     *
+     * @param transport The transport to close.
+     */
+    private static void close(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            LOGGER.log(Level.FINE, "Error closing SMTP transport", e);
+        }
+    }
+
+    /**
+     * An idle transport with the user it is logged in as and the time it was
+     * last used.
+     */
+    private static final class PooledTransport {
+
+        private final Transport transport;
+        private final String user;
+        private final long lastUsed;
+
+        private PooledTransport(Transport transport, String user) {
+            this.transport = transport;
+            this.user = user;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        private boolean isReusable(String user, long now) {
+            return this.user.equals(user) && now - lastUsed <= MAX_IDLE_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package encryption;
+
+import exception.CredentialRejectedException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * The {@code CredentialWorkerPool} class runs the RSA decryption and hashing
+ * of passwords on a dedicated, bounded pool of threads instead of the HTTP
+ * request threads, so a login storm cannot take all of them.
+ *
+ * Callers wait for their task on their own HTTP thread, so the pool is
+ * bounded by the number of callers, not by a queue: at most maxCallers tasks
+ * are outstanding, run by min(threads, maxCallers) workers, and the other
+ * HTTP threads stay free for the rest of the requests. maxCallers is half of
+ * the HTTP thread pool by default. A caller that finds maxCallers tasks
+ * outstanding waits up to admitMillis for one of them to finish, so a short
+ * burst is served, and otherwise gets a {@link CredentialRejectedException};
+ * so does a caller whose task takes longer than timeoutMillis.
+ *
+ * With the defaults, 5 HTTP threads like the http-thread-pool of Glassfish,
+ * that is 2 tasks on 2 workers, a caller waiting at most 200 ms to be
+ * admitted and 5 s for its task. The values are read from the
+ * "g3crud.http.threads", "g3crud.credentials.maxCallers",
+ * "g3crud.credentials.threads", "g3crud.credentials.admitMillis" and
+ * "g3crud.credentials.timeoutMillis" system properties; g3crud.http.threads
+ * must match the real size of the HTTP thread pool.
+ *
+ * The workers are created by the default managed thread factory of the
+ * container when there is one, and must be stopped with {@link #shutdown()}
+ * when the application is undeployed.
+ *
+ * @author Iñigo
+ * @version 1.0
+ */
+public final class CredentialWorkerPool {
+
+    //  Logger for the class.
+    private static final Logger LOGGER = Logger.getLogger(CredentialWorkerPool.class.getName());
+
+    /**
+     * Maximum number of worker threads.
+     */
+    private static final int THREADS = Integer.getInteger("g3crud.credentials.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Maximum time a caller waits to be admitted.
+     */
+    private static final long ADMIT_MILLIS = Long.getLong("g3crud.credentials.admitMillis", 200L);
+
+    /**
+     * Maximum time a caller waits for its task.
+     */
+    private static final long TIMEOUT_MILLIS = Long.getLong("g3crud.credentials.timeoutMillis", 5_000L);
+
+    /**
+     * Size of the HTTP thread pool of the server.
+     */
+    private static final int HTTP_THREADS = Integer.getInteger("g3crud.http.threads", 5);
+
+    /**
+     * Maximum number of outstanding tasks, each one with its caller waiting.
+     */
+    private static final int MAX_CALLERS = Integer.getInteger("g3crud.credentials.maxCallers",
+            Math.max(1, HTTP_THREADS / 2));
+
+    /**
+     * JNDI name of the default managed thread factory of the container.
+     */
+    private static final String THREAD_FACTORY = "java:comp/DefaultManagedThreadFactory";
+
+    /**
+     * Seconds after which a rejected client should retry.
+     */
+    private static final long RETRY_AFTER_SECONDS = 1L;
+
+    /**
+     * The pool used by the server.
+     */
+    private static final CredentialWorkerPool INSTANCE = new CredentialWorkerPool(THREADS, MAX_CALLERS, ADMIT_MILLIS, TIMEOUT_MILLIS);
+
+    private final ThreadPoolExecutor executor;
+
+    private final Semaphore callers;
+
+    private final long admitMillis;
+
+    private final long timeoutMillis;
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    private final AtomicLong totalServiceNanos = new AtomicLong();
+
+    private final AtomicLong maxServiceNanos = new AtomicLong();
+
+    /**
+     * Creates a pool.
+     *
+     * @param threads Maximum number of worker threads.
+     * @param maxCallers Maximum number of outstanding tasks.
+     * @param admitMillis Maximum time a caller waits to be admitted.
+     * @param timeoutMillis Maximum time a caller waits for its task.
+     */
+    public CredentialWorkerPool(int threads, int maxCallers, long admitMillis, long timeoutMillis) {
+        this.admitMillis = admitMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.callers = new Semaphore(maxCallers);
+        ThreadFactory threadFactory = managedThreadFactory();
+        if (threadFactory == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "credential-worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        // The queue never holds more than maxCallers tasks
+        int workers = Math.max(1, Math.min(threads, maxCallers));
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Looks up the default managed thread factory of the container.
+     *
+     * @return The thread factory, or null outside of a container.
+     */
+    private static ThreadFactory managedThreadFactory() {
+        try {
+            return InitialContext.doLookup(THREAD_FACTORY);
+        } catch (NamingException e) {
+            LOGGER.log(Level.INFO, "CredentialWorkerPool: no managed thread factory, using plain threads. {0}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the pool used by the server
+     */
+    public static CredentialWorkerPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decrypts a password sent by a client and hashes it, on a worker.
+     *
+     * @param encryptedPassword The Base64-encoded encrypted password.
+     * @return The MD5 hash of the password.
+     * @throws CredentialRejectedException If the pool is full.
+     */
+    public String decryptAndHash(String encryptedPassword) {
+        return call(() -> EncryptionImplementation.generateHash(
+                EncryptionImplementation.decrypWithPrivateKey(encryptedPassword)));
+    }
+
+    /**
+     * Hashes a password, on a worker.
+     *
+     * @param password The password.
+     * @return The MD5 hash of the password.
+     * @throws CredentialRejectedException If the pool is full.
+     */
+    public String hash(String password) {
+        return call(() -> EncryptionImplementation.generateHash(password));
+    }
+
+    /**
+     * Runs a task on a worker and waits for its result.
+     *
+     * @param <T> The type of the result.
+     * @param task The task.
+     * @return The result of the task.
+     * @throws CredentialRejectedException If the caller is not admitted in
+     * time or the task waits longer than the timeout.
+     */
+    public <T> T call(Callable<T> task) {
+        try {
+            if (!callers.tryAcquire(admitMillis, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                LOGGER.warning("CredentialWorkerPool: too many credential tasks, rejecting credential task.");
+                throw new CredentialRejectedException("Too many credential requests.", RETRY_AFTER_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CredentialRejectedException("Credential request interrupted.", RETRY_AFTER_SECONDS);
+        }
+        try {
+            return submitAndWait(task);
+        } finally {
+            callers.release();
+        }
+    }
+
+    /**
+     * Submits a task to the workers and waits for its result.
+     *
+     * @param <T> The type of the result.
+     * @param task The task.
+     * @return The result of the task.
+     */
+    private <T> T submitAndWait(Callable<T> task) {
+        final long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long started = System.nanoTime();
+                record(totalQueueNanos, maxQueueNanos, started - submitted);
+                try {
+                    return task.call();
+                } finally {
+                    record(totalServiceNanos, maxServiceNanos, System.nanoTime() - started);
+                    completed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            LOGGER.warning("CredentialWorkerPool: pool shut down, rejecting credential task.");
+            throw new CredentialRejectedException("Too many credential requests.", RETRY_AFTER_SECONDS);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.incrementAndGet();
+            LOGGER.warning("CredentialWorkerPool: credential task timed out.");
+            throw new CredentialRejectedException("Credential request timed out.", RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CredentialRejectedException("Credential request interrupted.", RETRY_AFTER_SECONDS);
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "CredentialWorkerPool: credential task failed.", e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Adds a duration to a total and keeps its maximum.
+     */
+    private static void record(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of workers running a task
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of tasks run
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return the number of tasks rejected or timed out
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the average time tasks waited for a worker, in microseconds
+     */
+    public long getAverageQueueMicros() {
+        long count = completed.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalQueueNanos.get() / count);
+    }
+
+    /**
+     * @return the maximum time a task waited for a worker, in microseconds
+     */
+    public long getMaxQueueMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxQueueNanos.get());
+    }
+
+    /**
+     * @return the average time tasks took to run, in microseconds
+     */
+    public long getAverageServiceMicros() {
+        long count = completed.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalServiceNanos.get() / count);
+    }
+
+    /**
+     * @return the maximum time a task took to run, in microseconds
+     */
+    public long getMaxServiceMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxServiceNanos.get());
+    }
+
+    /**
+     * Stops the workers. Called when the application is undeployed, so the
+     * threads do not keep its classloader alive.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -6,12 +6,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.security.KeyFactory;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.PrivateKey;
+import java.security.GeneralSecurityException;
 import java.security.spec.KeySpec;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.Arrays;
 import java.util.Base64;
 import javax.crypto.Cipher;
@@ -45,56 +41,30 @@ public class EncryptionImplementation {
     private static final byte[] salt = "g3 CRUD is salt!".getBytes();
 
     /**
-     * Generates an MD5 hash for the given password.
+     * Generates an MD5 hash for the given password. The hashing is done by
+     * {@link PasswordHasher}, which reuses the digest of the current thread.
      *
      * @param password The password to be hashed.
      * @return The MD5 hash of the password.
      */
     public static String generateHash(String password) {
-        // Convert the byte array to a hexadecimal representation
-        StringBuilder hexStringBuilder = new StringBuilder();
-        try {
-            MessageDigest md5 = MessageDigest.getInstance("MD5");
-            byte[] hashBytes = md5.digest(password.getBytes());
-
-            for (byte b : hashBytes) {
-                String hex = String.format("%02X", b);
-                hexStringBuilder.append(hex);
-            }
-
-        } catch (NoSuchAlgorithmException e) {
-            //
-        }
-        return hexStringBuilder.toString();
+        return PasswordHasher.hash(password);
     }
 
     /**
      * Decrypts an encrypted text using the private key stored in
-     * "keysprivateKey.der".
+     * "keysprivateKey.der". The key and the cipher are kept by
+     * {@link PrivateKeyHolder}, so the key file is only parsed once.
      *
      * @param encryptedText The Base64-encoded encrypted text to be decrypted.
      * @return The decrypted text.
      */
     public static String decrypWithPrivateKey(String encryptedText) {
 
-        // Load Private Key
-        byte[] encryptedTextBytes = null;
-
         try {
-            // Load Private Key
-            InputStream fis = EncryptionImplementation.class.getResourceAsStream("keysprivateKey.der");
-            byte[] privateKeyBytes = new byte[fis.available()];
-            fis.read(privateKeyBytes);
-            fis.close();
-
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
-            PrivateKey privateKey = keyFactory.generatePrivate(privateKeySpec);
-
             // Decrypt data
-            encryptedTextBytes = Base64.getDecoder().decode(encryptedText); // Decode the Base64 string back into bytes
-            Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            byte[] encryptedTextBytes = Base64.getDecoder().decode(encryptedText); // Decode the Base64 string back into bytes
+            Cipher cipher = PrivateKeyHolder.getDecryptCipher();
             byte[] decryptedData = cipher.doFinal(encryptedTextBytes);
             return new String(decryptedData, StandardCharsets.UTF_8); // Convert the decrypted bytes back into a string
 
@@ -104,6 +74,19 @@ public class EncryptionImplementation {
         return null;
     }
 
+    /**
+     * Encrypts a text with the public key matching "keysprivateKey.der", so
+     * only {@link #decrypWithPrivateKey(String)} can read it back.
+     *
+     * @param text The text to be encrypted.
+     * @return The Base64-encoded encrypted text.
+     * @throws GeneralSecurityException If the text cannot be encrypted.
+     */
+    public static String encryptWithPublicKey(String text) throws GeneralSecurityException {
+        Cipher cipher = PrivateKeyHolder.getEncryptCipher();
+        return Base64.getEncoder().encodeToString(cipher.doFinal(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
     /**
      * Reads the content of a file and returns it as a byte array.
      *
@@ -129,7 +112,7 @@ public class EncryptionImplementation {
      * @return The byte array representing the content of the InputStream.
      * @throws IOException If an I/O error occurs while reading the InputStream.
      */
-    private static byte[] inputStreamToBytes(InputStream inputStream) throws IOException {
+    static byte[] inputStreamToBytes(InputStream inputStream) throws IOException {
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
             byte[] buffer = new byte[4096]; // Adjust the buffer size as needed
             int bytesRead;
@@ -0,0 +1,74 @@
+package encryption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The {@code PasswordHasher} class generates the MD5 hash of passwords as an
+ * uppercase hexadecimal string.
+ *
+ * Each thread reuses its own {@link MessageDigest} and hex buffer, so hashing
+ * a password does not look up the digest algorithm nor format every byte. The
+ * output is the same as the one stored by previous versions, so existing
+ * hashes still match.
+ *
+ * @author Iñigo
+ * @version 1.0
+ */
+public final class PasswordHasher {
+
+    /**
+     * Uppercase hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Length in bytes of an MD5 digest.
+     */
+    private static final int DIGEST_LENGTH = 16;
+
+    /**
+     * The MD5 digest of the current thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available", e);
+            }
+        }
+    };
+
+    /**
+     * The hex buffer of the current thread.
+     */
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[DIGEST_LENGTH * 2];
+        }
+    };
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * Generates the MD5 hash of the given password.
+     *
+     * @param password The password to be hashed.
+     * @return The MD5 hash of the password as uppercase hexadecimal.
+     */
+    public static String hash(String password) {
+        MessageDigest md5 = DIGEST.get();
+        byte[] hashBytes = md5.digest(password.getBytes());
+        char[] buffer = BUFFER.get();
+        for (int i = 0; i < hashBytes.length; i++) {
+            int b = hashBytes[i] & 0xFF;
+            buffer[i * 2] = HEX[b >>> 4];
+            buffer[i * 2 + 1] = HEX[b & 0x0F];
+        }
+        return new String(buffer, 0, hashBytes.length * 2);
+    }
+}
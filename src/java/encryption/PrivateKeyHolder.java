@@ -0,0 +1,155 @@
+package encryption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import javax.crypto.Cipher;
+
+/**
+ * The {@code PrivateKeyHolder} class keeps the RSA private key stored in
+ * "keysprivateKey.der" loaded in memory and hands out reusable RSA ciphers.
+ *
+ * The key is parsed only once, the first time it is needed, instead of on
+ * every decryption. Each thread gets its own {@link Cipher} instance because
+ * ciphers are not thread safe. The public key is derived from the private key,
+ * so values the server keeps for itself can be encrypted without another key
+ * file.
+ *
+ * @author Iñigo
+ * @version 1.0
+ */
+public final class PrivateKeyHolder {
+
+    /**
+     * The transformation used for the RSA decryption.
+     */
+    private static final String TRANSFORMATION = "RSA/ECB/PKCS1Padding";
+
+    /**
+     * The RSA cipher of the current thread, initialized in decrypt mode.
+     */
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.DECRYPT_MODE, getPrivateKey());
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialize the RSA cipher", e);
+            }
+        }
+    };
+
+    /**
+     * The RSA cipher of the current thread, initialized in encrypt mode.
+     */
+    private static final ThreadLocal<Cipher> ENCRYPT_CIPHER = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.ENCRYPT_MODE, getPublicKey());
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialize the RSA cipher", e);
+            }
+        }
+    };
+
+    private PrivateKeyHolder() {
+    }
+
+    /**
+     * Lazy holder of the private key, loaded by the JVM the first time it is
+     * accessed.
+     */
+    private static final class KeyHolder {
+
+        private static final PrivateKey KEY = loadPrivateKey();
+
+        private static final PublicKey PUBLIC_KEY = publicKeyOf(KEY);
+    }
+
+    /**
+     * Returns the RSA private key, loading it on first use.
+     *
+     * @return The RSA private key.
+     */
+    public static PrivateKey getPrivateKey() {
+        return KeyHolder.KEY;
+    }
+
+    /**
+     * Returns the RSA public key matching the private key.
+     *
+     * @return The RSA public key.
+     */
+    public static PublicKey getPublicKey() {
+        return KeyHolder.PUBLIC_KEY;
+    }
+
+    /**
+     * Returns the RSA cipher of the current thread, ready to encrypt with the
+     * public key. The cipher must not be shared with other threads.
+     *
+     * @return The RSA cipher of the current thread.
+     */
+    public static Cipher getEncryptCipher() {
+        return ENCRYPT_CIPHER.get();
+    }
+
+    /**
+     * Returns the RSA cipher of the current thread, ready to decrypt. The
+     * cipher must not be shared with other threads.
+     *
+     * @return The RSA cipher of the current thread.
+     */
+    public static Cipher getDecryptCipher() {
+        return CIPHER.get();
+    }
+
+    /**
+     * Loads the private key from "keysprivateKey.der" in the classpath.
+     *
+     * @return The RSA private key.
+     */
+    private static PrivateKey loadPrivateKey() {
+        try (InputStream fis = PrivateKeyHolder.class.getResourceAsStream("keysprivateKey.der")) {
+            if (fis == null) {
+                throw new IllegalStateException("keysprivateKey.der not found in classpath");
+            }
+            byte[] privateKeyBytes = EncryptionImplementation.inputStreamToBytes(fis);
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            return keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKeyBytes));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot load the RSA private key", e);
+        }
+    }
+
+    /**
+     * Derives the public key from the modulus and public exponent kept in the
+     * private key.
+     *
+     * @param key The RSA private key.
+     * @return The RSA public key.
+     */
+    private static PublicKey publicKeyOf(PrivateKey key) {
+        if (!(key instanceof RSAPrivateCrtKey)) {
+            throw new IllegalStateException("The RSA private key does not hold its public exponent");
+        }
+        RSAPrivateCrtKey crtKey = (RSAPrivateCrtKey) key;
+        try {
+            return KeyFactory.getInstance("RSA").generatePublic(
+                    new RSAPublicKeySpec(crtKey.getModulus(), crtKey.getPublicExponent()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot derive the RSA public key", e);
+        }
+    }
+}
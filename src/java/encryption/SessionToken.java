@@ -0,0 +1,55 @@
+package encryption;
+
+import entities.EnumUserType;
+
+/**
+ * The {@code SessionToken} class holds the claims of a valid session token
+ * issued by {@link SessionTokens}.
+ *
+ * @author Iñigo
+ * @version 1.0
+ */
+public final class SessionToken {
+
+    /**
+     * Mail of the signed-in user.
+     */
+    private final String mail;
+
+    /**
+     * Type of the signed-in user.
+     */
+    private final EnumUserType userType;
+
+    /**
+     * Expiry, in seconds since the epoch.
+     */
+    private final long expiresAt;
+
+    SessionToken(String mail, EnumUserType userType, long expiresAt) {
+        this.mail = mail;
+        this.userType = userType;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return the mail of the signed-in user
+     */
+    public String getMail() {
+        return mail;
+    }
+
+    /**
+     * @return the type of the signed-in user
+     */
+    public EnumUserType getUserType() {
+        return userType;
+    }
+
+    /**
+     * @return the expiry, in seconds since the epoch
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,219 @@
+package encryption;
+
+import entities.EnumUserType;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The {@code SessionTokens} class issues and verifies stateless session
+ * tokens signed with HMAC-SHA256, so an authenticated request is checked
+ * without RSA nor database work.
+ *
+ * A token has the form {@code base64url(payload).base64url(hmac)}, where the
+ * payload is {@code keyId|userType|expiresAt|mail}. The keys are kept in a key
+ * ring: new tokens are signed with the newest key, and tokens signed with any
+ * key of the ring are accepted, so keys can be rotated without signing every
+ * user out. The ring is read from the "g3crud.token.keys" system property as
+ * {@code id:base64Key,id:base64Key}, newest first; otherwise a random key is
+ * generated at start-up, and tokens do not survive a restart. The lifetime of
+ * tokens can be overridden with the "g3crud.token.ttlSeconds" system property.
+ *
+ * The key ring is kept in memory only. A key added by {@link #rotate()} is
+ * lost on restart, when the ring is read again from the system property, so
+ * a rotation is only permanent once the property is changed too.
+ *
+ * @author Iñigo
+ * @version 1.0
+ */
+public final class SessionTokens {
+
+    //  Logger for the class.
+    private static final Logger LOGGER = Logger.getLogger(SessionTokens.class.getName());
+
+    /**
+     * The MAC algorithm.
+     */
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Lifetime of a token.
+     */
+    private static final long TTL_SECONDS = Long.getLong("g3crud.token.ttlSeconds", 3600L);
+
+    /**
+     * Number of keys kept in the ring, including the newest one.
+     */
+    private static final int MAX_KEYS = 3;
+
+    /**
+     * Size of the generated keys.
+     */
+    private static final int KEY_BYTES = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * The tokens used by the server.
+     */
+    private static final SessionTokens INSTANCE = new SessionTokens(System.getProperty("g3crud.token.keys"));
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * The key ring, newest key first. It is replaced, never modified.
+     */
+    private volatile Map<String, SecretKeySpec> keys;
+
+    /**
+     * Id of the newest key.
+     */
+    private volatile String currentKeyId;
+
+    /**
+     * Creates the key ring.
+     *
+     * @param configuredKeys The keys as {@code id:base64Key,...}, newest
+     * first, or null to generate a random key.
+     */
+    public SessionTokens(String configuredKeys) {
+        Map<String, SecretKeySpec> ring = new LinkedHashMap<>();
+        if (configuredKeys != null && !configuredKeys.trim().isEmpty()) {
+            for (String entry : configuredKeys.split(",")) {
+                String[] parts = entry.trim().split(":", 2);
+                if (parts.length != 2 || parts[0].isEmpty() || parts[0].contains("|")) {
+                    throw new IllegalArgumentException("Wrong token key: " + parts[0]);
+                }
+                ring.put(parts[0], new SecretKeySpec(Base64.getDecoder().decode(parts[1]), ALGORITHM));
+            }
+            LOGGER.info("SessionTokens: using the configured key ring.");
+        } else {
+            ring.put(newKeyId(), newKey());
+            LOGGER.log(Level.WARNING, "SessionTokens: no key ring configured, using a random key; tokens will not survive a restart.");
+        }
+        keys = ring;
+        currentKeyId = ring.keySet().iterator().next();
+    }
+
+    /**
+     * @return the tokens used by the server
+     */
+    public static SessionTokens getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Issues a token for a signed-in user.
+     *
+     * @param mail The mail of the user.
+     * @param userType The type of the user.
+     * @return The token.
+     */
+    public String issue(String mail, EnumUserType userType) {
+        String keyId = currentKeyId;
+        long expiresAt = System.currentTimeMillis() / 1000L + TTL_SECONDS;
+        byte[] payload = (keyId + "|" + userType + "|" + expiresAt + "|" + mail).getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(mac(keys.get(keyId), payload));
+    }
+
+    /**
+     * Verifies a token.
+     *
+     * @param token The token sent by the client.
+     * @return The claims of the token, or null if it is not valid or has
+     * expired.
+     */
+    public SessionToken verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String[] claims = new String(payload, StandardCharsets.UTF_8).split("\\|", 4);
+        if (claims.length != 4) {
+            return null;
+        }
+        SecretKeySpec key = keys.get(claims[0]);
+        if (key == null || !MessageDigest.isEqual(mac(key, payload), signature)) {
+            return null;
+        }
+        try {
+            long expiresAt = Long.parseLong(claims[2]);
+            if (expiresAt < System.currentTimeMillis() / 1000L) {
+                return null;
+            }
+            return new SessionToken(claims[3], EnumUserType.valueOf(claims[1]), expiresAt);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds a new random key to the ring and signs new tokens with it. The
+     * oldest keys beyond the size of the ring are dropped, and their tokens
+     * stop being accepted. The new key is only kept in memory, so it is lost
+     * on restart and the tokens signed with it stop being accepted.
+     *
+     * @return The id of the new key.
+     */
+    public synchronized String rotate() {
+        String keyId = newKeyId();
+        Map<String, SecretKeySpec> ring = new LinkedHashMap<>();
+        ring.put(keyId, newKey());
+        for (Map.Entry<String, SecretKeySpec> entry : keys.entrySet()) {
+            if (ring.size() == MAX_KEYS) {
+                break;
+            }
+            ring.put(entry.getKey(), entry.getValue());
+        }
+        keys = ring;
+        currentKeyId = keyId;
+        LOGGER.info("SessionTokens: token key rotated.");
+        return keyId;
+    }
+
+    /**
+     * Computes the HMAC of a payload.
+     */
+    private static byte[] mac(SecretKeySpec key, byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute the token signature", e);
+        }
+    }
+
+    private SecretKeySpec newKey() {
+        byte[] key = new byte[KEY_BYTES];
+        random.nextBytes(key);
+        return new SecretKeySpec(key, ALGORITHM);
+    }
+
+    private String newKeyId() {
+        byte[] id = new byte[6];
+        random.nextBytes(id);
+        return ENCODER.encodeToString(id);
+    }
+}
@@ -0,0 +1,230 @@
+package encryption;
+
+import entities.EnumUserType;
+import entities.User;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The {@code SignInCache} class remembers the sign-ins verified recently, so a
+ * client sending the same encrypted credential again is answered from memory,
+ * without decrypting, hashing or reading the user from the database.
+ *
+ * Entries are keyed by mail and hold the SHA-256 digest of the encrypted
+ * credential, never the password. They expire after a short TTL, which can be
+ * overridden with the "g3crud.signIn.cacheTtlSeconds" system property, and
+ * are removed as soon as the user is updated or deleted. Every removal also
+ * bumps a stamp, so a sign-in that read the user before the change cannot put
+ * the old credential back.
+ *
+ * @author Iñigo
+ * @version 1.0
+ */
+public final class SignInCache {
+
+    //  Logger for the class.
+    private static final Logger LOGGER = Logger.getLogger(SignInCache.class.getName());
+
+    /**
+     * Time an entry is valid.
+     */
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("g3crud.signIn.cacheTtlSeconds", 60L));
+
+    /**
+     * Maximum number of entries.
+     */
+    private static final int MAX_ENTRIES = 10_000;
+
+    /**
+     * JNDI name of the transaction synchronization registry.
+     */
+    private static final String REGISTRY_NAME = "java:comp/TransactionSynchronizationRegistry";
+
+    /**
+     * The SHA-256 digest of the current thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    };
+
+    /**
+     * The cache used by the server.
+     */
+    private static final SignInCache INSTANCE = new SignInCache();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every invalidation.
+     */
+    private final AtomicLong stamp = new AtomicLong();
+
+    private SignInCache() {
+    }
+
+    /**
+     * @return the cache used by the server
+     */
+    public static SignInCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the current stamp. It must be read before reading the user from
+     * the database and passed to {@link #put}.
+     *
+     * @return The current stamp.
+     */
+    public long stamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Looks for a recent sign-in with the same mail and encrypted credential.
+     *
+     * @param mail The mail of the user.
+     * @param encryptedPassword The encrypted credential sent by the client.
+     * @return A copy of the signed-in user, without password, or null.
+     */
+    public User get(String mail, String encryptedPassword) {
+        if (mail == null || encryptedPassword == null) {
+            return null;
+        }
+        Entry entry = entries.get(mail);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt > 0) {
+            entries.remove(mail, entry);
+            return null;
+        }
+        if (!MessageDigest.isEqual(entry.digest, digest(encryptedPassword))) {
+            return null;
+        }
+        return new User(entry.mail, null, entry.creationDate == null ? null : new Date(entry.creationDate.getTime()), entry.userType);
+    }
+
+    /**
+     * Remembers a verified sign-in, unless the user was invalidated after the
+     * given stamp was read.
+     *
+     * @param encryptedPassword The encrypted credential sent by the client.
+     * @param user The signed-in user.
+     * @param readStamp The stamp read before reading the user.
+     */
+    public void put(String encryptedPassword, User user, long readStamp) {
+        if (user.getMail() == null || encryptedPassword == null) {
+            return;
+        }
+        if (entries.size() >= MAX_ENTRIES) {
+            purgeExpired();
+            if (entries.size() >= MAX_ENTRIES) {
+                return;
+            }
+        }
+        Entry entry = new Entry(user, digest(encryptedPassword), System.nanoTime() + TTL_NANOS);
+        entries.put(user.getMail(), entry);
+        if (stamp.get() != readStamp) {
+            // The user may have changed while it was being verified
+            entries.remove(user.getMail(), entry);
+        }
+    }
+
+    /**
+     * Forgets the sign-in of a user now and again when the current transaction
+     * completes, so a sign-in that read the user before the commit is not kept.
+     *
+     * @param mail The mail of the user.
+     */
+    public void invalidate(final String mail) {
+        invalidateNow(mail);
+        try {
+            TransactionSynchronizationRegistry registry = (TransactionSynchronizationRegistry) new InitialContext().lookup(REGISTRY_NAME);
+            if (registry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+                registry.registerInterposedSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        invalidateNow(mail);
+                    }
+                });
+            }
+        } catch (NamingException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "SignInCache: no transaction to follow.", e);
+        }
+    }
+
+    /**
+     * Forgets the sign-in of a user.
+     *
+     * @param mail The mail of the user.
+     */
+    private void invalidateNow(String mail) {
+        stamp.incrementAndGet();
+        if (mail != null) {
+            entries.remove(mail);
+        }
+    }
+
+    /**
+     * Removes the expired entries.
+     */
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> now - entry.expiresAt > 0);
+    }
+
+    /**
+     * @return the SHA-256 digest of the encrypted credential
+     */
+    private static byte[] digest(String encryptedPassword) {
+        return DIGEST.get().digest(encryptedPassword.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A verified sign-in.
+     */
+    private static final class Entry {
+
+        private final String mail;
+
+        private final Date creationDate;
+
+        private final EnumUserType userType;
+
+        private final byte[] digest;
+
+        private final long expiresAt;
+
+        Entry(User user, byte[] digest, long expiresAt) {
+            this.mail = user.getMail();
+            this.creationDate = user.getCreationDate() == null ? null : new Date(user.getCreationDate().getTime());
+            this.userType = user.getUserType();
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
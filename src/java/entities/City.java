@@ -3,19 +3,25 @@ package entities;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Objects;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.ManyToMany;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 /**
  * It is an City entitywhich is Serializable. Containing attributes CityId,
@@ -24,6 +30,8 @@ import javax.xml.bind.annotation.XmlTransient;
  * @author Janam
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "city", schema = "g3crud")
 @NamedQueries({
     //Query to get all the Cities
@@ -33,10 +41,27 @@ import javax.xml.bind.annotation.XmlTransient;
     @NamedQuery(name = "findCityById", query = "SELECT c FROM City c WHERE c.cityId = :cityId")
     ,
     //Query to get the City by Country.
-    @NamedQuery(name = "findAllCityByCountry", query = "SELECT c FROM City c WHERE c.country = :country")
+    @NamedQuery(name = "findAllCityByCountry", query = "SELECT c FROM City c WHERE c.country = :country",
+            hints = {
+                @QueryHint(name = "org.hibernate.cacheable", value = "true")
+                ,
+                @QueryHint(name = "org.hibernate.cacheRegion", value = "query.cityFilter")})
     ,
     //Query to get the City by PopulationType.
-    @NamedQuery(name = "findAllCityBypopulationType", query = "SELECT c FROM City c WHERE c.populationType = :populationType")
+    @NamedQuery(name = "findAllCityBypopulationType", query = "SELECT c FROM City c WHERE c.populationType = :populationType",
+            hints = {
+                @QueryHint(name = "org.hibernate.cacheable", value = "true")
+                ,
+                @QueryHint(name = "org.hibernate.cacheRegion", value = "query.cityFilter")})
+    ,
+    //Query to get a page of Cities after a given CityId.
+    @NamedQuery(name = "findCityPage", query = "SELECT c FROM City c WHERE c.cityId > :after ORDER BY c.cityId")
+    ,
+    //Query to delete Cities by Id, once they have no trips.
+    @NamedQuery(name = "deleteCitiesById", query = "DELETE FROM City c WHERE c.cityId IN :cityIds")
+    ,
+    //Query to get the scalar columns of all the Cities, without their trips.
+    @NamedQuery(name = "findCitySummaries", query = "SELECT NEW dto.CitySummary(c.cityId, c.name, c.country, c.populationType, c.weatherType) FROM City c ORDER BY c.cityId")
 
 })
 @XmlRootElement
@@ -45,10 +70,22 @@ public class City implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /**
-     * Identification field for the City and is AutoGenetrated.
+     * Identification field for the City and is AutoGenetrated. Ids are taken
+     * from the id_generator table in blocks of 50, so inserts can be batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "cityIdGenerator")
+    @GenericGenerator(name = "cityIdGenerator", strategy = "org.hibernate.id.enhanced.TableGenerator",
+            parameters = {
+                @Parameter(name = "schema", value = "g3crud")
+                ,
+                @Parameter(name = "table_name", value = "id_generator")
+                ,
+                @Parameter(name = "segment_value", value = "city")
+                ,
+                @Parameter(name = "increment_size", value = "50")
+                ,
+                @Parameter(name = "optimizer", value = "pooled-lo")})
     private Long cityId;
 
     /**
@@ -77,8 +114,16 @@ public class City implements Serializable {
      * Relational field for cities trips.
      */
     @ManyToMany(mappedBy = "cities", fetch = FetchType.EAGER)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Trip> trips;
 
+    /**
+     * Version of the City, increased on every update. An update made from an
+     * older version fails instead of overwriting the newer data.
+     */
+    @Version
+    private Long version;
+
     /**
      * Empty Constructor.
      */
@@ -100,6 +145,20 @@ public class City implements Serializable {
         this.cityId = cityId;
     }
 
+    /**
+     * @return the version of City
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param version City version.
+     */
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     /**
      * Get the name
      *
@@ -2,6 +2,7 @@ package entities;
 
 import java.util.List;
 import static javax.persistence.CascadeType.REMOVE;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.NamedQueries;
@@ -10,6 +11,7 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
+import org.hibernate.annotations.BatchSize;
 
 /**
  * Represents a Customer entity, extending the User class and implementing
@@ -24,11 +26,15 @@ import javax.xml.bind.annotation.XmlTransient;
     ,
     @NamedQuery(name = "Customer.findByEmail", query = "SELECT c FROM Customer c WHERE c.mail = :email")
     ,
-    @NamedQuery(name = "Customer.findWithTrips", query = "SELECT DISTINCT c FROM Customer c WHERE c IN (SELECT t.customer FROM TripInfo t)")
+    @NamedQuery(name = "Customer.findWithTrips", query = "SELECT c FROM Customer c WHERE c.tripCount > 0")
+    ,
+    @NamedQuery(name = "Customer.countWithTrips", query = "SELECT COUNT(c) FROM Customer c WHERE c.tripCount > 0")
     ,
     @NamedQuery(name = "Customer.findAllOrderDate", query = "SELECT c FROM Customer c ORDER BY c.creationDate")
     ,
-    @NamedQuery(name = "Customer.findOneWeek", query = "SELECT c FROM Customer c WHERE mail IN (SELECT tf.customer FROM TripInfo tf WHERE EXTRACT(day FROM (tf.lastDate - tf.initialDate)) > 7) ")
+    @NamedQuery(name = "Customer.findOneWeek", query = "SELECT c FROM Customer c WHERE c.mail IN (SELECT tf.tripInfoId.customerId FROM TripInfo tf WHERE tf.durationDays > 7)")
+    ,
+    @NamedQuery(name = "Customer.findPage", query = "SELECT c FROM Customer c WHERE c.mail > :after ORDER BY c.mail")
 })
 @XmlRootElement
 public class Customer extends User {
@@ -59,8 +65,17 @@ public class Customer extends User {
      * A list of TripInfo objects associated with this customer.
      */
     @OneToMany(mappedBy = "customer", cascade = REMOVE, fetch = FetchType.EAGER)
+    @BatchSize(size = 50)
     private List<TripInfo> tripsInfo;
 
+    /**
+     * The number of TripInfo objects of this customer. It is maintained by the
+     * database updates of the TripInfo create and delete operations, so it is
+     * never written from the entity.
+     */
+    @Column(insertable = false, updatable = false)
+    private Integer tripCount;
+
     /**
      * Default constructor for the Customer class.
      */
@@ -160,6 +175,25 @@ public class Customer extends User {
         this.tripsInfo = tripsInfo;
     }
 
+    /**
+     * Retrieves the number of TripInfo objects of this customer.
+     *
+     * @return The number of TripInfo objects of this customer.
+     */
+    public Integer getTripCount() {
+        return tripCount;
+    }
+
+    /**
+     * Sets the number of TripInfo objects of this customer. The value is not
+     * written to the database.
+     *
+     * @param tripCount The number of TripInfo objects of this customer.
+     */
+    public void setTripCount(Integer tripCount) {
+        this.tripCount = tripCount;
+    }
+
     /**
      * Computes the hash code for this customer based on the email address.
      *
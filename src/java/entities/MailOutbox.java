@@ -0,0 +1,290 @@
+package entities;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * It is a MailOutbox entity which is Serializable. Each instance is a recovery
+ * email waiting to be sent, or already sent, by the outbox worker. The
+ * generated password only becomes the password of the user once the email is
+ * sent, so the old password keeps working until then, and for good if the
+ * email is discarded.
+ *
+ * @author Janam
+ */
+@Entity
+@Table(name = "mailOutbox", schema = "g3CRUD")
+@NamedQueries({
+    //Query to get the messages that are due to be sent.
+    @NamedQuery(name = "findDueMailOutbox", query = "SELECT m FROM MailOutbox m WHERE m.status IN :statuses AND m.nextAttempt <= :now ORDER BY m.nextAttempt")
+    ,
+    //Query to count the messages that have not been sent yet.
+    @NamedQuery(name = "countPendingMailOutbox", query = "SELECT COUNT(m) FROM MailOutbox m WHERE m.status IN :statuses")
+    ,
+    //Query to discard the messages of a recipient that have not been claimed.
+    @NamedQuery(name = "discardPendingMailOutbox", query = "UPDATE MailOutbox m SET m.status = :status, m.password = NULL, m.passwordHash = NULL WHERE m.recipient = :recipient AND m.status = :pending")
+})
+public class MailOutbox implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Identification field for the message and is AutoGenerated.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    /**
+     * Email address the message is sent to.
+     */
+    private String recipient;
+
+    /**
+     * Generated password to be sent, encrypted with the RSA public key of the
+     * server. It is cleared once the message is sent or discarded.
+     */
+    @Column(length = 512)
+    private String password;
+
+    /**
+     * Hash of the generated password, written to the user once the message is
+     * sent. It is cleared once the message is sent or discarded.
+     */
+    private String passwordHash;
+
+    /**
+     * State of the message.
+     */
+    @Enumerated(EnumType.STRING)
+    private MailOutboxStatus status;
+
+    /**
+     * Number of failed attempts to send the message.
+     */
+    private int attempts;
+
+    /**
+     * Date from which the message can be sent.
+     */
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date nextAttempt;
+
+    /**
+     * Date the message was written to the outbox.
+     */
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date creationDate;
+
+    /**
+     * Date the message was sent.
+     */
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date sentDate;
+
+    /**
+     * Error of the last failed attempt.
+     */
+    @Column(length = 500)
+    private String lastError;
+
+    /**
+     * Empty Constructor.
+     */
+    public MailOutbox() {
+
+    }
+
+    /**
+     * @return the id of the message
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @param id the id to set
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the recipient
+     */
+    public String getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * @param recipient the recipient to set
+     */
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    /**
+     * @return the encrypted password to be sent
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * @param password the encrypted password to set
+     */
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * @return the hash of the password to be sent
+     */
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    /**
+     * @param passwordHash the passwordHash to set
+     */
+    public void setPasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
+    }
+
+    /**
+     * @return the status
+     */
+    public MailOutboxStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @param status the status to set
+     */
+    public void setStatus(MailOutboxStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the number of failed attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param attempts the attempts to set
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return the date from which the message can be sent
+     */
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    /**
+     * @param nextAttempt the nextAttempt to set
+     */
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    /**
+     * @return the creationDate
+     */
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    /**
+     * @param creationDate the creationDate to set
+     */
+    public void setCreationDate(Date creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    /**
+     * @return the sentDate
+     */
+    public Date getSentDate() {
+        return sentDate;
+    }
+
+    /**
+     * @param sentDate the sentDate to set
+     */
+    public void setSentDate(Date sentDate) {
+        this.sentDate = sentDate;
+    }
+
+    /**
+     * @return the error of the last failed attempt
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @param lastError the lastError to set
+     */
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    /**
+     * Integer representation for MailOutbox instance.
+     *
+     * @return hash
+     */
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 59 * hash + Objects.hashCode(this.id);
+        return hash;
+    }
+
+    /**
+     * Compares two MailOutbox objects for equality by their id.
+     *
+     * @param obj The other MailOutbox object to compare to.
+     * @return true if ids are equals.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final MailOutbox other = (MailOutbox) obj;
+        return Objects.equals(this.id, other.id);
+    }
+
+    /**
+     * Obtains a string representation of the MailOutbox without the password.
+     *
+     * @return The String representing the MailOutbox.
+     */
+    @Override
+    public String toString() {
+        return "MailOutbox{" + "id=" + id + ", recipient=" + recipient + ", status=" + status + ", attempts=" + attempts + ", nextAttempt=" + nextAttempt + '}';
+    }
+}
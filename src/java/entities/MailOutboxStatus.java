@@ -0,0 +1,11 @@
+package entities;
+
+/**
+ * This enumeration is for the states of a {@link MailOutbox} message. Includes
+ * the values PENDING, SENDING, SENT and FAILED.
+ *
+ * @author Janam
+ */
+public enum MailOutboxStatus {
+    PENDING, SENDING, SENT, FAILED
+}
@@ -3,6 +3,7 @@ package entities;
 import java.io.Serializable;
 import java.util.List;
 import static javax.persistence.CascadeType.REMOVE;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
@@ -18,8 +19,11 @@ import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Entity for Trip, it has id, cities, tripType and description
@@ -27,6 +31,8 @@ import javax.xml.bind.annotation.XmlTransient;
  * @author Iñigo
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "trip", schema = "g3CRUD")
 @NamedQueries({
     //Query to get all the trips
@@ -34,6 +40,12 @@ import javax.xml.bind.annotation.XmlTransient;
     ,
     //Query to get a trip with the tripType
     @NamedQuery(name = "findTripsByTripType", query = "SELECT t FROM Trip t WHERE t.tripType = :tripType")
+    ,
+    //Query to get a page of trips after a given id
+    @NamedQuery(name = "findTripPage", query = "SELECT t FROM Trip t WHERE t.id > :after ORDER BY t.id")
+    ,
+    //Query to get the scalar columns of all the trips, without cities or tripInfo
+    @NamedQuery(name = "findTripSummaries", query = "SELECT NEW dto.TripSummary(t.id, t.tripType, t.description) FROM Trip t ORDER BY t.id")
 })
 @XmlRootElement
 public class Trip implements Serializable {
@@ -46,6 +58,7 @@ public class Trip implements Serializable {
     private List<TripInfo> tripInfo;
 
     @ManyToMany(fetch = EAGER)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(schema = "g3CRUD", name = "trip_cities", joinColumns = @JoinColumn(name = "trip_id", referencedColumnName = "id"),
             inverseJoinColumns = @JoinColumn(name = "city_id", referencedColumnName = "cityId"))
     private List<City> cities;
@@ -55,6 +68,10 @@ public class Trip implements Serializable {
 
     private String description;
 
+    //Increased on every update, so an update from an older version fails
+    @Version
+    private Long version;
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -118,6 +135,14 @@ public class Trip implements Serializable {
         this.cities = cities;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getDescription() {
         return description;
     }
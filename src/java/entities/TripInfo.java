@@ -1,6 +1,9 @@
 package entities;
 
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
@@ -11,6 +14,7 @@ import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Version;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 
@@ -34,6 +38,15 @@ import javax.xml.bind.annotation.XmlTransient;
     ,
     //Query to get only tripInfos that are inactive
     @NamedQuery(name = "findInactiveTripInfoByCustomer", query = "SELECT ti FROM TripInfo ti WHERE ti.customer = :customer AND ti.lastDate < :date")
+    ,
+    //Query to get a page of tripInfo from a Trip after a given customer id
+    @NamedQuery(name = "findTripInfoPageByTrip", query = "SELECT ti FROM TripInfo ti WHERE ti.trip = :trip AND ti.tripInfoId.customerId > :after ORDER BY ti.tripInfoId.customerId")
+    ,
+    //Query to get a page of tripInfo from a Customer after a given trip id
+    @NamedQuery(name = "findTripInfoPageByCustomer", query = "SELECT ti FROM TripInfo ti WHERE ti.customer = :customer AND ti.tripInfoId.tripId > :after ORDER BY ti.tripInfoId.tripId")
+    ,
+    //Query to get the summary of all tripInfo with a lastDate from a customer id, without loading the Customer
+    @NamedQuery(name = "findTripInfoSummariesByCustomerId", query = "SELECT NEW dto.TripInfoSummary(ti.tripInfoId.tripId, t.tripType, t.description, ti.initialDate, ti.lastDate, ti.durationDays) FROM TripInfo ti JOIN ti.trip t WHERE ti.tripInfoId.customerId = :customerId AND ti.lastDate IS NOT NULL ORDER BY ti.lastDate")
 })
 
 @XmlRootElement
@@ -56,6 +69,13 @@ public class TripInfo implements Serializable {
     @Temporal(TemporalType.TIMESTAMP)
     Date lastDate;
 
+    //Whole days between initialDate and lastDate, stored so it can be indexed
+    Integer durationDays;
+
+    //Increased on every update, so an update from an older version fails
+    @Version
+    Long version;
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -127,10 +147,52 @@ public class TripInfo implements Serializable {
         this.lastDate = lastDate;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Integer getDurationDays() {
+        return durationDays;
+    }
+
+    public void setDurationDays(Integer durationDays) {
+        this.durationDays = durationDays;
+    }
+
+    /**
+     * Recomputes durationDays from initialDate and lastDate. It counts the
+     * calendar days between them, the same as DATEDIFF(lastDate, initialDate),
+     * so a day shortened by a daylight saving change still counts.
+     */
+    public void refreshDurationDays() {
+        if (initialDate == null || lastDate == null) {
+            durationDays = null;
+        } else {
+            durationDays = (int) ChronoUnit.DAYS.between(localDate(initialDate), localDate(lastDate));
+        }
+    }
+
+    /**
+     * Gets the calendar day of a date in the time zone of the server.
+     *
+     * @param date The date, which may be a java.sql.Date.
+     * @return The calendar day.
+     */
+    private static LocalDate localDate(Date date) {
+        if (date instanceof java.sql.Date) {
+            return ((java.sql.Date) date).toLocalDate();
+        }
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
     @Override
     public String toString() {
         return "TripInfo [tripInfoId=" + tripInfoId + ", trip=" + trip + ", customer=" + customer + ", initialDate="
-                + initialDate + ", lastDate=" + lastDate + "]";
+                + initialDate + ", lastDate=" + lastDate + ", durationDays=" + durationDays + "]";
     }
 
 }
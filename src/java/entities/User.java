@@ -2,6 +2,7 @@ package entities;
 
 import java.io.Serializable;
 import java.util.Date;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
@@ -13,7 +14,10 @@ import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Version;
 import javax.xml.bind.annotation.XmlRootElement;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Entity JPA class for user data. The properties of this class are login , 
@@ -24,8 +28,13 @@ import javax.xml.bind.annotation.XmlRootElement;
 @Table(name = "user", schema = "g3CRUD")
 @NamedQueries({
 @NamedQuery(name = "User.findByEmail", query = "SELECT u FROM User u WHERE u.mail = :email"),
+@NamedQuery(name = "User.findAllMails", query = "SELECT u.mail FROM User u"),
+@NamedQuery(name = "User.countAll", query = "SELECT COUNT(u) FROM User u"),
+@NamedQuery(name = "User.updatePassword", query = "UPDATE User u SET u.password = :password, u.version = u.version + 1 WHERE u.mail = :mail"),
 })
 @Inheritance( strategy = InheritanceType.JOINED)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @XmlRootElement
 public class User implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -48,6 +57,12 @@ public class User implements Serializable {
      */
     @Enumerated(EnumType.STRING)
     private EnumUserType userType;
+    /**
+     * Version of the user, increased on every update. An update made from an
+     * older version fails instead of overwriting the newer data.
+     */
+    @Version
+    private Long version;
 
     public User(String mail, String password, Date creationDate, EnumUserType userType) {
         this.mail = mail;
@@ -99,6 +114,20 @@ public class User implements Serializable {
     public void setCreationDate(Date creationDate) {
         this.creationDate = creationDate;
     }
+    /**
+     * Gets the version of the user.
+     * @return The version.
+     */
+    public Long getVersion() {
+        return version;
+    }
+    /**
+     * Sets the version of the user.
+     * @param version The version.
+     */
+    public void setVersion(Long version) {
+        this.version = version;
+    }
     /**
      * Gets Profile value for user.
      * @return The Profile value.
@@ -0,0 +1,40 @@
+package exception;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Represents an exception that occurs when the credential worker pool is full
+ * and a password cannot be decrypted or hashed right now. The client should
+ * retry after the given number of seconds.
+ *
+ * @author Iñigo
+ */
+@ApplicationException(rollback = true)
+public class CredentialRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Seconds after which the client should retry.
+     */
+    private final long retryAfterSeconds;
+
+    /**
+     * Constructs an instance of CredentialRejectedException with the specified
+     * detailed error message.
+     *
+     * @param msg the detailed error message.
+     * @param retryAfterSeconds seconds after which the client should retry.
+     */
+    public CredentialRejectedException(String msg, long retryAfterSeconds) {
+        super(msg);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return the seconds after which the client should retry
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,33 @@
+package exception;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Represents an exception that occurs when an object is updated from a
+ * version that is no longer the stored one, because somebody else updated it
+ * in the meantime. The transaction is rolled back.
+ *
+ * @author Iñigo
+ */
+@ApplicationException(rollback = true)
+public class StaleVersionException extends UpdateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new instance of StaleVersionException without a detailed
+     * error message.
+     */
+    public StaleVersionException() {
+    }
+
+    /**
+     * Constructs an instance of StaleVersionException with the specified
+     * detailed error message.
+     *
+     * @param msg the detailed error message.
+     */
+    public StaleVersionException(String msg) {
+        super(msg);
+    }
+}
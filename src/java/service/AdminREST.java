@@ -0,0 +1,157 @@
+package service;
+
+import dto.CacheRegionStatistics;
+import dto.CredentialPoolStatistics;
+import dto.MailOutboxStatistics;
+import ejb.MailOutboxWorker;
+import ejbLocal.EntityCacheEJBLocal;
+import encryption.CredentialWorkerPool;
+import encryption.SessionTokens;
+import entities.EnumUserType;
+import exception.ReadException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ejb.EJB;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * RESTful web service exposing the operational metrics of the server. Only
+ * administrators with a valid session token can use it.
+ *
+ * @author Janam
+ */
+@Path("admin")
+@TokenRequired(EnumUserType.ADMIN)
+public class AdminREST {
+
+    /**
+     * Logger for class methods.
+     */
+    private static final Logger LOGGER = Logger.getLogger(AdminREST.class.getName());
+
+    /**
+     * EJB reference for the recovery email outbox worker.
+     */
+    @EJB
+    private MailOutboxWorker mailOutboxWorker;
+
+    /**
+     * EJB reference for the second-level cache.
+     */
+    @EJB
+    private EntityCacheEJBLocal entityCache;
+
+    /**
+     * RESTful GET method for reading the recovery email outbox metrics.
+     *
+     * @return The queue depth and send latency of the outbox.
+     */
+    @GET
+    @Path("mailOutbox")
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public MailOutboxStatistics getMailOutboxStatistics() {
+        try {
+            return mailOutboxWorker.getStatistics();
+        } catch (ReadException ex) {
+            LOGGER.log(Level.SEVERE, "AdminRESTful service: Exception reading mail outbox metrics, {0}", ex.getMessage());
+            throw new InternalServerErrorException(ex);
+        }
+    }
+
+    /**
+     * RESTful GET method for reading the hit/miss metrics of the second-level
+     * cache regions.
+     *
+     * @return A List of {@link CacheRegionStatistics} objects.
+     */
+    @GET
+    @Path("cache")
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public List<CacheRegionStatistics> getCacheStatistics() {
+        try {
+            return entityCache.getStatistics();
+        } catch (ReadException ex) {
+            LOGGER.log(Level.SEVERE, "AdminRESTful service: Exception reading cache metrics, {0}", ex.getMessage());
+            throw new InternalServerErrorException(ex);
+        }
+    }
+
+    /**
+     * RESTful GET method for reading the metrics of the City filter query
+     * cache.
+     *
+     * @return The {@link CacheRegionStatistics} of the region.
+     */
+    @GET
+    @Path("cache/cityFilter")
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public CacheRegionStatistics getCityFilterCacheStatistics() {
+        CacheRegionStatistics statistics;
+        try {
+            statistics = entityCache.getRegionStatistics(EntityCacheEJBLocal.CITY_FILTER_QUERIES);
+        } catch (ReadException ex) {
+            LOGGER.log(Level.SEVERE, "AdminRESTful service: Exception reading query cache metrics, {0}", ex.getMessage());
+            throw new InternalServerErrorException(ex);
+        }
+        if (statistics == null) {
+            throw new NotFoundException("The City filter query cache has not been used yet.");
+        }
+        return statistics;
+    }
+
+    /**
+     * RESTful DELETE method for discarding every cached result of the City
+     * filter queries.
+     */
+    @DELETE
+    @Path("cache/cityFilter")
+    public void flushCityFilterCache() {
+        LOGGER.info("AdminRESTful service: flushing the City filter query cache.");
+        entityCache.evictQueryRegion(EntityCacheEJBLocal.CITY_FILTER_QUERIES);
+    }
+
+    /**
+     * RESTful GET method for reading the credential worker pool metrics.
+     *
+     * @return The queue and service times of the credential workers.
+     */
+    @GET
+    @Path("credentials")
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public CredentialPoolStatistics getCredentialPoolStatistics() {
+        CredentialWorkerPool pool = CredentialWorkerPool.getInstance();
+        CredentialPoolStatistics statistics = new CredentialPoolStatistics();
+        statistics.setQueueSize(pool.getQueueSize());
+        statistics.setActiveCount(pool.getActiveCount());
+        statistics.setCompleted(pool.getCompleted());
+        statistics.setRejected(pool.getRejected());
+        statistics.setAverageQueueMicros(pool.getAverageQueueMicros());
+        statistics.setMaxQueueMicros(pool.getMaxQueueMicros());
+        statistics.setAverageServiceMicros(pool.getAverageServiceMicros());
+        statistics.setMaxServiceMicros(pool.getMaxServiceMicros());
+        return statistics;
+    }
+
+    /**
+     * RESTful POST method for rotating the session token key. Tokens signed
+     * with the previous keys stay valid until they expire. The new key is
+     * kept in memory only, and lost on restart.
+     *
+     * @return The id of the new key.
+     */
+    @POST
+    @Path("tokenKeys/rotate")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String rotateTokenKey() {
+        LOGGER.info("AdminRESTful service: rotating the session token key.");
+        return SessionTokens.getInstance().rotate();
+    }
+}
@@ -23,8 +23,10 @@ public class ApplicationConfig extends Application {
      * out calling this method in getClasses().
      */
     private void addRestResourceClasses(Set<Class<?>> resources) {
+        resources.add(service.AdminREST.class);
         resources.add(service.CityREST.class);
         resources.add(service.CustomerREST.class);
+        resources.add(service.TokenFilter.class);
         resources.add(service.TripInfoREST.class);
         resources.add(service.TripREST.class);
         resources.add(service.UserREST.class);
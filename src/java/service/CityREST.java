@@ -1,35 +1,53 @@
 package service;
 
+import dto.CityBatchResult;
+import dto.CitySummary;
 import ejbLocal.CityManagerEJBLocal;
 import entities.City;
+import entities.EnumUserType;
 import entities.PopulationType;
+import entities.WeatherType;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.EJB;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
-import javax.transaction.Transactional;
+import javax.ejb.EJBException;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 
 /**
  * The CityREST class provides RESTful web services for managing City entities.
  * It exposes CRUD operations (Create, Read, Update, Delete) and additional
  * methods for retrieving cities based on various criteria.
  *
+ * Only administrators with a valid session token can change cities.
+ *
  * This class utilizes the CityManagerEJBLocal EJB to interact with the
  * underlying business logic for city management.
  *
@@ -38,16 +56,22 @@ import javax.ws.rs.core.MediaType;
 @Path("city")
 public class CityREST {
 
-    @PersistenceContext
-    private EntityManager em;
-
     // Injecting the CityManagerEJBLocal EJB for handling city-related operations.
     @EJB
     private CityManagerEJBLocal cityEJB;
 
+    // Request URI, used to build the next page links.
+    @Context
+    private UriInfo uriInfo;
+
     // Logger
     private static final Logger LOGGER = Logger.getLogger(CityREST.class.getName());
 
+    /**
+     * Number of Cities stored in each transaction by the batch create.
+     */
+    private static final int BATCH_CHUNK_SIZE = 500;
+
     /**
      * Creates a new City using the provided entity.
      *
@@ -57,6 +81,7 @@ public class CityREST {
      */
     @POST
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
     public void createCity(City entity) {
 
         try {
@@ -75,21 +100,127 @@ public class CityREST {
     }
 
     /**
-     * Updates an existing City with the provided entity.
+     * Creates several Cities. They are stored in transactions of
+     * {@link #BATCH_CHUNK_SIZE} Cities with JDBC batching. If a transaction
+     * fails, its Cities are created one by one, so only the wrong ones fail.
+     *
+     * @param entities The City entities to be created.
+     * @return The result of each City, in the same order as the request.
+     */
+    @POST
+    @Path("batch")
+    @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
+    public List<CityBatchResult> createCities(List<City> entities) {
+
+        LOGGER.log(Level.INFO, "CityRESTful service: create {0} Cities.", entities == null ? 0 : entities.size());
+
+        List<CityBatchResult> results = new ArrayList<>();
+
+        if (entities == null) {
+
+            return results;
+        }
+
+        for (int from = 0; from < entities.size(); from += BATCH_CHUNK_SIZE) {
+
+            List<City> chunk = entities.subList(from, Math.min(from + BATCH_CHUNK_SIZE, entities.size()));
+
+            try {
+
+                cityEJB.createCities(chunk);
+
+                for (int i = 0; i < chunk.size(); i++) {
+
+                    results.add(new CityBatchResult(from + i, chunk.get(i).getCityId(), CityBatchResult.CREATED, null));
+                }
+
+            } catch (CreateException | EJBException ex) {
+
+                LOGGER.log(Level.WARNING, "CityRESTful service: Exception creating Cities, retrying one by one, {0}", ex.getMessage());
+
+                for (int i = 0; i < chunk.size(); i++) {
+
+                    results.add(createOne(from + i, chunk.get(i)));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Creates a single City of a batch.
+     *
+     * @param index Position of the City in the request.
+     * @param city The City entity to be created.
+     * @return The result of the City.
+     */
+    private CityBatchResult createOne(int index, City city) {
+
+        if (city == null) {
+
+            return new CityBatchResult(index, null, CityBatchResult.FAILED, "Empty City.");
+        }
+
+        // The rolled back transaction may have assigned an id
+        city.setCityId(null);
+
+        try {
+
+            cityEJB.createCity(city);
+
+            return new CityBatchResult(index, city.getCityId(), CityBatchResult.CREATED, null);
+
+        } catch (CreateException | EJBException ex) {
+
+            LOGGER.log(Level.SEVERE, "CityRESTful service: Exception creating city, {0}", ex.getMessage());
+
+            return new CityBatchResult(index, null, CityBatchResult.FAILED, ex.getMessage());
+        }
+    }
+
+    /**
+     * Updates an existing City with the provided entity. The update is made
+     * from the version in the If-Match header, or else the version in the
+     * entity. An entity without any version overwrites the stored City, and is
+     * retried if the City changes meanwhile.
      *
      * @param entity The City entity containing updated information.
+     * @param ifMatch The If-Match header, or null.
      * @throws InternalServerErrorException If an internal server error occurs
      * during the update process.
      */
     @PUT
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public void updateCity(City entity) {
+    @TokenRequired(EnumUserType.ADMIN)
+    public void updateCity(City entity, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+
+        Long expected = VersionTags.ifMatch(ifMatch);
 
         try {
 
             LOGGER.log(Level.INFO, "CityRESTful service: update {0}.", entity);
 
-            cityEJB.updateCity(entity);
+            if (expected != null) {
+                entity.setVersion(expected);
+            }
+
+            if (entity.getVersion() != null) {
+                cityEJB.updateCity(entity);
+            } else {
+                OptimisticRetry.run(() -> {
+                    entity.setVersion(null);
+                    cityEJB.updateCity(entity);
+                });
+            }
+
+        } catch (StaleVersionException ex) {
+
+            LOGGER.log(Level.WARNING, "CityRESTful service: Stale city, {0}", ex.getMessage());
+
+            throw VersionTags.conflict(ex, expected);
 
         } catch (UpdateException ex) {
 
@@ -101,7 +232,63 @@ public class CityREST {
     }
 
     /**
-     * Deletes a City with the specified cityId.
+     * Changes some fields of a City with a JSON Merge Patch document, such as
+     * {"name": "Bilbao"}. Only name, country, populationType and weatherType
+     * may be changed, and only those given are written. With an If-Match
+     * header the City is only changed if it is still that version.
+     *
+     * @param cityId The cityId of the City to be changed.
+     * @param ifMatch The If-Match header, or null.
+     * @param body The merge patch document.
+     * @return An empty response with the new version in the ETag header.
+     * @throws BadRequestException If the document is not valid.
+     * @throws NotFoundException If there is no City with that cityId.
+     */
+    @PATCH
+    @Path("{cityId}")
+    @Consumes({MergePatch.MEDIA_TYPE, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
+    public Response patchCity(@PathParam("cityId") Long cityId,
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, InputStream body) {
+
+        Long expected = VersionTags.ifMatch(ifMatch);
+
+        MergePatch patch = new MergePatch(body, CityManagerEJBLocal.PATCH_ATTRIBUTES)
+                .string("name", false)
+                .string("country", false)
+                .enumeration("populationType", PopulationType.class, true)
+                .enumeration("weatherType", WeatherType.class, true);
+
+        try {
+
+            LOGGER.log(Level.INFO, "CityRESTful service: patch {0}.", cityId);
+
+            Long version = cityEJB.patchCity(cityId, expected, patch.changes());
+
+            if (version == null) {
+                throw new NotFoundException();
+            }
+
+            return Response.noContent().tag(VersionTags.tag(version)).build();
+
+        } catch (StaleVersionException ex) {
+
+            LOGGER.log(Level.WARNING, "CityRESTful service: Stale city, {0}", ex.getMessage());
+
+            throw VersionTags.conflict(ex, expected);
+
+        } catch (UpdateException ex) {
+
+            LOGGER.log(Level.SEVERE, "CityRESTful service: Exception patching city, {0}", ex.getMessage());
+
+            throw new InternalServerErrorException(ex.getMessage());
+
+        }
+    }
+
+    /**
+     * Deletes a City with the specified cityId, without loading it nor its
+     * trips.
      *
      * @param cityId The unique identifier of the City to be deleted.
      * @throws InternalServerErrorException If an internal server error occurs
@@ -109,45 +296,56 @@ public class CityREST {
      */
     @DELETE
     @Path("{cityId}")
-    @Transactional
-    //@TransactionAttribute(REQUIRED)
+    @TokenRequired(EnumUserType.ADMIN)
     public void deleteCity(@PathParam("cityId") Long cityId) {
 
         try {
 
             LOGGER.log(Level.INFO, "CityRESTful service: delete city by cityId={0}.", cityId);
 
-            // Fetch the managed City entity
-            City cityToDelete = cityEJB.findCityByCityId(cityId);
+            if (cityEJB.deleteCitiesById(Collections.singletonList(cityId)) == 0) {
 
-            // Check if the entity is not null
-            if (cityToDelete != null) {
+                LOGGER.log(Level.WARNING, "CityRESTful service: Trying to delete a null city with id {0}.", cityId);
+            }
 
-                // Check if the entity is managed (attached)
-                if (em.contains(cityToDelete)) {
+        } catch (DeleteException ex) {
 
-                    // Delete the City
-                    cityEJB.deleteCity(cityToDelete);
+            LOGGER.log(Level.SEVERE, "CityRESTful service: Exception deleting city by cityId, {0}", ex.getMessage());
 
-                } else {
+            throw new InternalServerErrorException(ex.getMessage());
 
-                    // If not managed, merge it to attach it to the persistence context
-                    City managedCity = em.merge(cityToDelete);
+        }
+    }
 
-                    // Delete the City
-                    cityEJB.deleteCity(managedCity);
-                }
+    /**
+     * Deletes the Cities with the specified cityIds in a single transaction,
+     * without loading them nor their trips.
+     *
+     * @param cityIds The unique identifiers of the Cities to be deleted.
+     * @return The number of Cities deleted.
+     * @throws InternalServerErrorException If an internal server error occurs
+     * during the deletion process.
+     */
+    @DELETE
+    @Path("batch")
+    @Produces(MediaType.TEXT_PLAIN)
+    @TokenRequired(EnumUserType.ADMIN)
+    public String deleteCities(@QueryParam("id") List<Long> cityIds) {
 
-            } else {
+        if (cityIds == null || cityIds.isEmpty()) {
 
-                // Handle the case where the entity is null (log a warning, throw an exception, etc.)
-                LOGGER.log(Level.WARNING, "CityRESTful service: Trying to delete a null city with id {0}.", cityId);
+            throw new BadRequestException("At least one id is required.");
+        }
 
-            }
+        try {
 
-        } catch (ReadException | DeleteException ex) {
+            LOGGER.log(Level.INFO, "CityRESTful service: delete {0} cities.", cityIds.size());
 
-            LOGGER.log(Level.SEVERE, "CityRESTful service: Exception deleting city by cityId, {0}", ex.getMessage());
+            return String.valueOf(cityEJB.deleteCitiesById(cityIds));
+
+        } catch (DeleteException ex) {
+
+            LOGGER.log(Level.SEVERE, "CityRESTful service: Exception deleting cities, {0}", ex.getMessage());
 
             throw new InternalServerErrorException(ex.getMessage());
 
@@ -158,14 +356,15 @@ public class CityREST {
      * Retrieves a City by its unique identifier (cityId).
      *
      * @param cityId The unique identifier of the City to be retrieved.
-     * @return The City object corresponding to the provided cityId.
+     * @return The City object corresponding to the provided cityId, with its
+     * version in the ETag header.
      * @throws InternalServerErrorException If an internal server error occurs
      * during the retrieval process.
      */
     @GET
     @Path("{cityId}")
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public City findCityById(@PathParam("cityId") Long cityId) {
+    public Response findCityById(@PathParam("cityId") Long cityId) {
 
         City city = null;
 
@@ -183,27 +382,51 @@ public class CityREST {
 
         }
 
-        return city;
+        if (city == null) {
+            return Response.noContent().build();
+        }
+
+        return Response.ok(city).tag(VersionTags.tag(city.getVersion())).build();
     }
 
     /**
-     * Retrieves a list of all City entities.
+     * Retrieves a list of all City entities. When the "after" or "limit"
+     * query parameters are given, only a page of cities ordered by cityId is
+     * returned, and the cursor of the next page is sent in the X-Next-Cursor
+     * header.
      *
-     * @return A list containing all City entities.
+     * @param after The cursor of the page, or null for the first page.
+     * @param limit The maximum number of cities in the page.
+     * @return A list containing all City entities, or a page of them.
      * @throws InternalServerErrorException If an internal server error occurs
      * during the retrieval process.
      */
     @GET
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public List<City> findAllCity() {
+    public Response findAllCity(@QueryParam("after") String after, @QueryParam("limit") Integer limit) {
 
         List<City> cities = null;
 
+        String next = null;
+
         try {
 
-            LOGGER.log(Level.INFO, "CityRESTful service: find all City.");
+            if (PageCursor.isPaged(after, limit)) {
+
+                LOGGER.log(Level.INFO, "CityRESTful service: find page of City.");
+
+                int size = PageCursor.limit(limit);
+
+                cities = cityEJB.findCitiesPage(PageCursor.decodeLong(after), size + 1);
+
+                next = PageCursor.trim(cities, size, City::getCityId);
 
-            cities = cityEJB.findAllCities();
+            } else {
+
+                LOGGER.log(Level.INFO, "CityRESTful service: find all City.");
+
+                cities = cityEJB.findAllCities();
+            }
 
         } catch (ReadException ex) {
 
@@ -213,9 +436,76 @@ public class CityREST {
 
         }
 
+        return PageCursor.response(new GenericEntity<List<City>>(cities) {
+        }, next, uriInfo);
+    }
+
+    /**
+     * Retrieves the scalar columns of all cities, without their trips. It
+     * runs a single SQL statement.
+     *
+     * @return A list containing the summary of all cities.
+     * @throws InternalServerErrorException If an internal server error occurs
+     * during the retrieval process.
+     */
+    @GET
+    @Path("summary")
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public List<CitySummary> findAllCitySummaries() {
+
+        List<CitySummary> cities = null;
+
+        try {
+
+            LOGGER.log(Level.INFO, "CityRESTful service: find all City summaries.");
+
+            cities = cityEJB.findCitySummaries();
+
+        } catch (ReadException ex) {
+
+            LOGGER.log(Level.SEVERE, "CityRESTful service: Exception reading City summaries, {0}", ex.getMessage());
+
+            throw new InternalServerErrorException(ex.getMessage());
+
+        }
+
         return cities;
     }
 
+    /**
+     * Streams all City entities as a JSON array. The cities are read with a
+     * server-side cursor and written one by one, so memory use does not
+     * depend on the number of cities.
+     *
+     * @return The streamed JSON array of cities.
+     */
+    @GET
+    @Path("stream")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StreamingOutput streamAllCity() {
+
+        LOGGER.log(Level.INFO, "CityRESTful service: stream all City.");
+
+        return out -> {
+
+            JsonEntityWriter writer = new JsonEntityWriter(out);
+
+            try {
+
+                cityEJB.streamAllCities(writer.cities());
+
+            } catch (ReadException ex) {
+
+                LOGGER.log(Level.SEVERE, "CityRESTful service: Exception streaming all City, {0}", ex.getMessage());
+
+                throw new InternalServerErrorException(ex.getMessage());
+
+            }
+
+            writer.finish();
+        };
+    }
+
     /**
      * Retrieves a list of City entities based on the specified country.
      *
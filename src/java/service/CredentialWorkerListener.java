@@ -0,0 +1,35 @@
+package service;
+
+import encryption.CredentialWorkerPool;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Stops the credential workers when the application is undeployed, so a
+ * redeploy does not leave them running with the old classloader.
+ *
+ * @author Janam
+ */
+@WebListener
+public class CredentialWorkerListener implements ServletContextListener {
+
+    /**
+     * Nothing to do; the workers are created on first use.
+     *
+     * @param sce The event of the context.
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+    }
+
+    /**
+     * Stops the credential workers.
+     *
+     * @param sce The event of the context.
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        CredentialWorkerPool.getInstance().shutdown();
+    }
+}
@@ -1,22 +1,38 @@
 package service;
 
+import dto.MailAvailability;
+import ejb.MailRegistry;
 import ejbLocal.CustomerManagerEJBLocal;
-import static encryption.EncryptionImplementation.decrypWithPrivateKey;
-import static encryption.EncryptionImplementation.generateHash;
+import encryption.CredentialWorkerPool;
 import entities.Customer;
+import entities.EnumUserType;
 import exception.CreateException;
+import exception.CredentialRejectedException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import java.io.InputStream;
 import javax.ejb.EJB;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * RESTful web service for managing customers.
+ * RESTful web service for managing customers. Anyone can sign up and ask for
+ * a recovery email; a customer can only be read and changed with a valid
+ * session token of that customer or of an administrator, and only
+ * administrators can list them. The user type of a customer is always
+ * CUSTOMER, whatever the request says.
  *
  * @author Dani
  */
@@ -27,38 +43,92 @@ public class CustomerREST {
     @EJB
     private CustomerManagerEJBLocal ejb;
 
+    // Registry of the mails in use, checked before creating a customer.
+    @EJB
+    private MailRegistry mailRegistry;
+
+    // Request URI, used to build the next page links.
+    @Context
+    private UriInfo uriInfo;
+
+    // Security context set by the TokenFilter.
+    @Context
+    private SecurityContext security;
+
     // Logger for logging messages.
     private static final Logger LOGGER = Logger.getLogger(CustomerREST.class.getName());
 
     /**
-     * Retrieves all customers.
+     * Retrieves all customers. When the "after" or "limit" query parameters
+     * are given, only a page of customers ordered by email is returned, and
+     * the cursor of the next page is sent in the X-Next-Cursor header.
      *
+     * @param after The cursor of the page, or null for the first page.
+     * @param limit The maximum number of customers in the page.
      * @return List of Customer objects in XML or JSON format.
      */
     @GET
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public List<Customer> getAllCustomers() {
+    @TokenRequired(EnumUserType.ADMIN)
+    public Response getAllCustomers(@QueryParam("after") String after, @QueryParam("limit") Integer limit) {
         List<Customer> customers = null;
+        String next = null;
         try {
-            customers = ejb.findAllCustomers();
-            LOGGER.log(Level.INFO, "Retrieved all customers");
+            if (PageCursor.isPaged(after, limit)) {
+                int size = PageCursor.limit(limit);
+                customers = ejb.findCustomersPage(PageCursor.decode(after), size + 1);
+                next = PageCursor.trim(customers, size, Customer::getMail);
+                LOGGER.log(Level.INFO, "Retrieved page of customers");
+            } else {
+                customers = ejb.findAllCustomers();
+                LOGGER.log(Level.INFO, "Retrieved all customers");
+            }
         } catch (ReadException e) {
             LOGGER.log(Level.SEVERE, "Error retrieving all customers", e);
             throw new InternalServerErrorException(e);
         }
-        return customers;
+        return PageCursor.response(new GenericEntity<List<Customer>>(customers) {
+        }, next, uriInfo);
+    }
+
+    /**
+     * Streams all customers as a JSON array, without their passwords. The
+     * customers are read with a server-side cursor and written one by one, so
+     * memory use does not depend on the number of customers.
+     *
+     * @return The streamed JSON array of customers.
+     */
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.APPLICATION_JSON)
+    @TokenRequired(EnumUserType.ADMIN)
+    public StreamingOutput streamAllCustomers() {
+        return out -> {
+            JsonEntityWriter writer = new JsonEntityWriter(out);
+            try {
+                ejb.streamAllCustomers(writer.customers());
+                LOGGER.log(Level.INFO, "Streamed all customers");
+            } catch (ReadException e) {
+                LOGGER.log(Level.SEVERE, "Error streaming all customers", e);
+                throw new InternalServerErrorException(e);
+            }
+            writer.finish();
+        };
     }
 
     /**
      * Retrieves a customer by email.
      *
      * @param mail Customer's email address.
-     * @return Customer object in XML or JSON format.
+     * @return Customer object in XML or JSON format, with its version in the
+     * ETag header.
      */
     @GET
     @Path("/byMail/{mail}")
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public Customer getCustomerByMail(@PathParam("mail") String mail) {
+    @TokenRequired
+    public Response getCustomerByMail(@PathParam("mail") String mail) {
+        TokenAccess.checkSelfOrAdmin(security, mail);
         Customer customer = null;
         try {
             customer = ejb.findCustomerByMail(mail);
@@ -67,7 +137,25 @@ public class CustomerREST {
             LOGGER.log(Level.SEVERE, "Error retrieving customer by mail: " + mail, e);
             throw new InternalServerErrorException(e);
         }
-        return customer;
+        if (customer == null) {
+            throw new NotFoundException();
+        }
+        return Response.ok(customer).tag(VersionTags.tag(customer.getVersion())).build();
+    }
+
+    /**
+     * Tells whether a mail can be used to sign up. It is answered from the
+     * in-memory mail filter, without reading the database, so an available
+     * mail is certainly free but a taken one may be a false positive.
+     *
+     * @param mail The email address.
+     * @return The availability of the mail in XML or JSON format.
+     */
+    @GET
+    @Path("/mailAvailability/{mail}")
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public MailAvailability getMailAvailability(@PathParam("mail") String mail) {
+        return new MailAvailability(mail, !mailRegistry.mightBeRegistered(mail));
     }
 
     /**
@@ -78,6 +166,7 @@ public class CustomerREST {
     @GET
     @Path("/withTrips")
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
     public List<Customer> getCustomersWithTrips() {
         List<Customer> customers = null;
         try {
@@ -89,6 +178,24 @@ public class CustomerREST {
         return customers;
     }
 
+    /**
+     * Counts the customers with trips, without loading them.
+     *
+     * @return The number of customers with trips.
+     */
+    @GET
+    @Path("/withTrips/count")
+    @Produces(MediaType.TEXT_PLAIN)
+    @TokenRequired(EnumUserType.ADMIN)
+    public String countCustomersWithTrips() {
+        try {
+            return String.valueOf(ejb.countCustomersWithTrips());
+        } catch (ReadException e) {
+            LOGGER.log(Level.SEVERE, "Error counting customers with trips", e);
+            throw new InternalServerErrorException(e);
+        }
+    }
+
     /**
      * Retrieves a customer by OrderByCreationDate.
      *
@@ -97,6 +204,7 @@ public class CustomerREST {
     @GET
     @Path("/CreationDate")
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
     public List<Customer> getCustomersOrderByCreationDate() {
         List<Customer> customers = null;
         try {
@@ -116,6 +224,7 @@ public class CustomerREST {
     @GET
     @Path("/MoreThanOneWeekTrips")
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
     public List<Customer> getCustomersOneWeekTrips() {
         List<Customer> customers = null;
         try {
@@ -128,7 +237,8 @@ public class CustomerREST {
     }
 
     /**
-     * Creates a new customer.
+     * Creates a new customer. A mail that is already registered is rejected
+     * with 409 Conflict before the password is decrypted.
      *
      * @param customer Customer object to be created.
      */
@@ -136,11 +246,18 @@ public class CustomerREST {
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
     public void createCustomer(Customer customer) {
         try {
-            System.out.println("customer desencriptar = " + customer + "CUSTOMER REST RECIBE = " + decrypWithPrivateKey(customer.getPassword()) + " y ahora hasheado= " + generateHash(customer.getPassword()));
-            customer.setPassword(generateHash(decrypWithPrivateKey(customer.getPassword())));
+            if (mailRegistry.isRegistered(customer.getMail())) {
+                LOGGER.log(Level.INFO, "Customer not created, mail already registered: {0}", customer.getMail());
+                throw new ClientErrorException(Response.Status.CONFLICT);
+            }
+            customer.setUserType(EnumUserType.CUSTOMER);
+            customer.setPassword(CredentialWorkerPool.getInstance().decryptAndHash(customer.getPassword()));
             ejb.createCustomer(customer);
             LOGGER.log(Level.INFO, "Created customer with id: {0}", customer.getMail());
-        } catch (CreateException e) {
+        } catch (CredentialRejectedException e) {
+            LOGGER.log(Level.WARNING, "Customer creation rejected, credential workers busy: {0}", customer.getMail());
+            throw new ServiceUnavailableException(e.getRetryAfterSeconds());
+        } catch (CreateException | ReadException e) {
             LOGGER.log(Level.SEVERE, "Error creating customer", e);
             throw new InternalServerErrorException(e);
         }
@@ -152,21 +269,100 @@ public class CustomerREST {
      * @param customer Customer object containing the updated information.
      * @param encrypted A boolean flag indicating whether the customer's data is
      * encrypted.
+     * @param ifMatch The If-Match header, or null. The update is made from
+     * this version, or else the version in the customer. A customer without
+     * any version overwrites the stored one, and is retried if it changes
+     * meanwhile.
      */
     @PUT
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public void updateCustomer(Customer customer, @PathParam("encrypted") boolean encrypted) {
+    @TokenRequired
+    public void updateCustomer(Customer customer, @PathParam("encrypted") boolean encrypted,
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        TokenAccess.checkSelfOrAdmin(security, customer.getMail());
+        Long expected = VersionTags.ifMatch(ifMatch);
         try {
             LOGGER.info("Updating customer");
-            customer.setPassword(generateHash(customer.getPassword()));
-            ejb.updateCustomer(customer, encrypted);
+            customer.setUserType(EnumUserType.CUSTOMER);
+            customer.setPassword(CredentialWorkerPool.getInstance().hash(customer.getPassword()));
+            if (expected != null) {
+                customer.setVersion(expected);
+            }
+            if (customer.getVersion() != null) {
+                ejb.updateCustomer(customer, encrypted);
+            } else {
+                // The EJB hashes the password in place, so every attempt starts from this one
+                String password = customer.getPassword();
+                OptimisticRetry.run(() -> {
+                    customer.setVersion(null);
+                    customer.setPassword(password);
+                    ejb.updateCustomer(customer, encrypted);
+                });
+            }
             LOGGER.log(Level.INFO, "Updated customer with id: {0}", customer.getMail());
+        } catch (CredentialRejectedException e) {
+            LOGGER.log(Level.WARNING, "Customer update rejected, credential workers busy: {0}", customer.getMail());
+            throw new ServiceUnavailableException(e.getRetryAfterSeconds());
+        } catch (StaleVersionException e) {
+            LOGGER.log(Level.WARNING, "Stale customer: {0}", e.getMessage());
+            throw VersionTags.conflict(e, expected);
         } catch (UpdateException e) {
             LOGGER.log(Level.SEVERE, "Error updating customer", e);
             throw new InternalServerErrorException(e);
         }
     }
 
+    /**
+     * Changes some fields of a customer with a JSON Merge Patch document.
+     * Only name, zip, address, phone and password may be changed, and only
+     * those given are written. The password is sent encrypted, as when
+     * signing up, and is only decrypted and hashed when it is given.
+     *
+     * With an If-Match header the customer is only changed if it is still
+     * that version.
+     *
+     * @param mail Customer's email address.
+     * @param ifMatch The If-Match header, or null.
+     * @param body The merge patch document.
+     * @return An empty response with the new version in the ETag header.
+     */
+    @PATCH
+    @Path("/byMail/{mail}")
+    @Consumes({MergePatch.MEDIA_TYPE, MediaType.APPLICATION_JSON})
+    @TokenRequired
+    public Response patchCustomer(@PathParam("mail") String mail,
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, InputStream body) {
+        TokenAccess.checkSelfOrAdmin(security, mail);
+        Long expected = VersionTags.ifMatch(ifMatch);
+        MergePatch patch = new MergePatch(body, CustomerManagerEJBLocal.PATCH_ATTRIBUTES)
+                .string("name", true)
+                .integer("zip", true)
+                .string("address", true)
+                .integer("phone", true)
+                .string("password", false);
+        try {
+            if (patch.has("password")) {
+                String password = (String) patch.changes().get("password");
+                patch.changes().put("password", CredentialWorkerPool.getInstance().decryptAndHash(password));
+            }
+            Long version = ejb.patchCustomer(mail, expected, patch.changes());
+            if (version == null) {
+                throw new NotFoundException();
+            }
+            LOGGER.log(Level.INFO, "Patched customer with id: {0}", mail);
+            return Response.noContent().tag(VersionTags.tag(version)).build();
+        } catch (CredentialRejectedException e) {
+            LOGGER.log(Level.WARNING, "Customer patch rejected, credential workers busy: {0}", mail);
+            throw new ServiceUnavailableException(e.getRetryAfterSeconds());
+        } catch (StaleVersionException e) {
+            LOGGER.log(Level.WARNING, "Stale customer: {0}", e.getMessage());
+            throw VersionTags.conflict(e, expected);
+        } catch (UpdateException e) {
+            LOGGER.log(Level.SEVERE, "Error patching customer", e);
+            throw new InternalServerErrorException(e);
+        }
+    }
+
     /**
      * Deletes a customer by the provided customer ID.
      *
@@ -174,7 +370,9 @@ public class CustomerREST {
      */
     @DELETE
     @Path("/Delete/{id}")
+    @TokenRequired
     public void deleteCustomer(@PathParam("id") String id) {
+        TokenAccess.checkSelfOrAdmin(security, id);
         try {
             ejb.deleteCustomer(id);
             LOGGER.log(Level.INFO, "Deleted customer with id: {0}", id);
@@ -196,7 +394,10 @@ public class CustomerREST {
     public void sendRecoveryEmail(Customer customer) throws ReadException {
         try {
             ejb.sendRecoveryMail(customer);
-            LOGGER.info("Recovery email sent successfully");
+            LOGGER.info("Recovery email queued successfully");
+        } catch (CredentialRejectedException e) {
+            LOGGER.log(Level.WARNING, "Recovery email rejected, credential workers busy: {0}", customer.getMail());
+            throw new ServiceUnavailableException(e.getRetryAfterSeconds());
         } catch (ReadException e) {
             LOGGER.log(Level.SEVERE, "Error sending a recovery mail to a customer", e.getMessage());
             throw new InternalServerErrorException(e);
@@ -0,0 +1,156 @@
+package service;
+
+import entities.City;
+import entities.Customer;
+import entities.Trip;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.Consumer;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes entities as a JSON array directly to the response stream, one by
+ * one, for the streaming endpoints. Only the scalar fields and the cities of
+ * trips are written; null fields are skipped, as in the regular responses.
+ *
+ * @author Janam
+ */
+final class JsonEntityWriter {
+
+    /**
+     * Number of entities after which the output is flushed.
+     */
+    private static final int FLUSH_INTERVAL = 1000;
+
+    /**
+     * The JSON generator writing to the response.
+     */
+    private final JsonGenerator generator;
+
+    /**
+     * Format of the dates.
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+
+    /**
+     * Number of entities written.
+     */
+    private long count;
+
+    /**
+     * Starts the JSON array.
+     *
+     * @param out The response stream.
+     */
+    JsonEntityWriter(OutputStream out) {
+        generator = Json.createGenerator(out);
+        generator.writeStartArray();
+    }
+
+    /**
+     * @return A consumer writing cities.
+     */
+    Consumer<City> cities() {
+        return city -> {
+            generator.writeStartObject();
+            writeCityFields(city);
+            generator.writeEnd();
+            written();
+        };
+    }
+
+    /**
+     * @return A consumer writing trips and their cities.
+     */
+    Consumer<Trip> trips() {
+        return trip -> {
+            generator.writeStartObject();
+            write("id", trip.getId());
+            write("tripType", trip.getTripType());
+            write("description", trip.getDescription());
+            if (trip.getCities() != null) {
+                generator.writeStartArray("cities");
+                for (City city : trip.getCities()) {
+                    generator.writeStartObject();
+                    writeCityFields(city);
+                    generator.writeEnd();
+                }
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+            written();
+        };
+    }
+
+    /**
+     * @return A consumer writing customers, without their password.
+     */
+    Consumer<Customer> customers() {
+        return customer -> {
+            generator.writeStartObject();
+            write("mail", customer.getMail());
+            write("creationDate", customer.getCreationDate());
+            write("userType", customer.getUserType());
+            write("name", customer.getName());
+            write("zip", customer.getZip());
+            write("address", customer.getAddress());
+            write("phone", customer.getPhone());
+            generator.writeEnd();
+            written();
+        };
+    }
+
+    /**
+     * Ends the JSON array and flushes the output. It is not called when the
+     * read fails, so a failed response is not a well-formed array.
+     */
+    void finish() {
+        generator.writeEnd();
+        generator.close();
+    }
+
+    /**
+     * Writes the scalar fields of a city.
+     *
+     * @param city The city.
+     */
+    private void writeCityFields(City city) {
+        write("cityId", city.getCityId());
+        write("name", city.getName());
+        write("country", city.getCountry());
+        write("populationType", city.getPopulationType());
+        write("weatherType", city.getWeatherType());
+    }
+
+    /**
+     * Writes a field if it is not null.
+     *
+     * @param name The field name.
+     * @param value The field value.
+     */
+    private void write(String name, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Long) {
+            generator.write(name, (Long) value);
+        } else if (value instanceof Integer) {
+            generator.write(name, (Integer) value);
+        } else if (value instanceof Date) {
+            generator.write(name, dateFormat.format((Date) value));
+        } else {
+            generator.write(name, value.toString());
+        }
+    }
+
+    /**
+     * Counts a written entity and flushes the output periodically.
+     */
+    private void written() {
+        if (++count % FLUSH_INTERVAL == 0) {
+            generator.flush();
+        }
+    }
+}
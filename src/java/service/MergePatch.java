@@ -0,0 +1,176 @@
+package service;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+import javax.ws.rs.BadRequestException;
+
+/**
+ * Reader of JSON Merge Patch documents (RFC 7396) for the PATCH endpoints.
+ *
+ * A document is a JSON object with the fields to be changed. A field set to
+ * null is cleared, and a field that is not present is left as it is. The
+ * fields are turned into a map of attribute names to Java values, which the
+ * EJBs write with a single UPDATE statement instead of merging the entity.
+ *
+ * @author Janam
+ */
+final class MergePatch {
+
+    /**
+     * Media type of JSON Merge Patch documents.
+     */
+    static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    /**
+     * The document.
+     */
+    private final JsonObject patch;
+
+    /**
+     * The changes read so far, by attribute name.
+     */
+    private final Map<String, Object> changes = new LinkedHashMap<>();
+
+    /**
+     * Reads a document from a request body.
+     *
+     * @param body The request body.
+     * @param fields The fields that may be changed.
+     * @throws BadRequestException If the body is not a JSON object, is empty
+     * or has other fields.
+     */
+    MergePatch(InputStream body, Set<String> fields) {
+        JsonStructure document;
+        try (JsonReader reader = Json.createReader(body)) {
+            document = reader.read();
+        } catch (JsonException | IllegalStateException e) {
+            throw new BadRequestException("Malformed merge patch: " + e.getMessage());
+        }
+        if (!(document instanceof JsonObject)) {
+            throw new BadRequestException("A merge patch must be a JSON object.");
+        }
+        patch = (JsonObject) document;
+        if (patch.isEmpty()) {
+            throw new BadRequestException("The merge patch has no fields.");
+        }
+        for (String field : patch.keySet()) {
+            if (!fields.contains(field)) {
+                throw new BadRequestException("Field cannot be patched: " + field);
+            }
+        }
+    }
+
+    /**
+     * Tells whether the document has a field.
+     *
+     * @param field The field.
+     * @return True if the field is present, even if it is null.
+     */
+    boolean has(String field) {
+        return patch.containsKey(field);
+    }
+
+    /**
+     * Reads a string field, if it is present.
+     *
+     * @param field The field.
+     * @param nullable Whether the field may be cleared.
+     * @return This patch.
+     * @throws BadRequestException If the field is not a string.
+     */
+    MergePatch string(String field, boolean nullable) {
+        JsonValue value = value(field, nullable);
+        if (value == JsonValue.NULL) {
+            changes.put(field, null);
+        } else if (value instanceof JsonString) {
+            changes.put(field, ((JsonString) value).getString());
+        } else if (value != null) {
+            throw new BadRequestException("Field must be a string: " + field);
+        }
+        return this;
+    }
+
+    /**
+     * Reads an integer field, if it is present.
+     *
+     * @param field The field.
+     * @param nullable Whether the field may be cleared.
+     * @return This patch.
+     * @throws BadRequestException If the field is not an integer.
+     */
+    MergePatch integer(String field, boolean nullable) {
+        JsonValue value = value(field, nullable);
+        if (value == JsonValue.NULL) {
+            changes.put(field, null);
+        } else if (value instanceof JsonNumber && ((JsonNumber) value).isIntegral()) {
+            try {
+                changes.put(field, ((JsonNumber) value).intValueExact());
+            } catch (ArithmeticException e) {
+                throw new BadRequestException("Field out of range: " + field);
+            }
+        } else if (value != null) {
+            throw new BadRequestException("Field must be an integer: " + field);
+        }
+        return this;
+    }
+
+    /**
+     * Reads an enum field, given by the name of the constant, if it is
+     * present.
+     *
+     * @param <E> The enum type.
+     * @param field The field.
+     * @param type The enum class.
+     * @param nullable Whether the field may be cleared.
+     * @return This patch.
+     * @throws BadRequestException If the field is not a constant of the enum.
+     */
+    <E extends Enum<E>> MergePatch enumeration(String field, Class<E> type, boolean nullable) {
+        JsonValue value = value(field, nullable);
+        if (value == JsonValue.NULL) {
+            changes.put(field, null);
+        } else if (value instanceof JsonString) {
+            try {
+                changes.put(field, Enum.valueOf(type, ((JsonString) value).getString()));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unknown value of field " + field);
+            }
+        } else if (value != null) {
+            throw new BadRequestException("Field must be a string: " + field);
+        }
+        return this;
+    }
+
+    /**
+     * @return The changes read, by attribute name.
+     */
+    Map<String, Object> changes() {
+        return changes;
+    }
+
+    /**
+     * Returns the value of a field.
+     *
+     * @param field The field.
+     * @param nullable Whether the field may be cleared.
+     * @return The value, or null if the field is not present.
+     * @throws BadRequestException If the field is null and cannot be cleared.
+     */
+    private JsonValue value(String field, boolean nullable) {
+        JsonValue value = patch.get(field);
+        if (value == JsonValue.NULL && !nullable) {
+            throw new BadRequestException("Field cannot be cleared: " + field);
+        }
+        return value;
+    }
+}
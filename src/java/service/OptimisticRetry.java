@@ -0,0 +1,83 @@
+package service;
+
+import exception.StaleVersionException;
+import exception.UpdateException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs an update again when it fails because the entity was changed in the
+ * meantime. It is only meant for updates that give the whole new state
+ * without a version, so running them again is harmless: every attempt runs
+ * in its own transaction and reads the stored version again.
+ *
+ * The number of attempts is read from the "g3crud.optimisticRetry.attempts"
+ * system property, 3 by default.
+ *
+ * @author Janam
+ */
+final class OptimisticRetry {
+
+    /**
+     * Logger for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(OptimisticRetry.class.getName());
+
+    /**
+     * Number of attempts.
+     */
+    private static final int ATTEMPTS = Math.max(1, Integer.getInteger("g3crud.optimisticRetry.attempts", 3));
+
+    /**
+     * Maximum wait before the second attempt, doubled on every attempt.
+     */
+    private static final long BASE_BACKOFF_MILLIS = 5;
+
+    /**
+     * An update run by {@link OptimisticRetry}.
+     */
+    interface Update {
+
+        /**
+         * Runs the update, in a transaction of its own.
+         *
+         * @throws UpdateException If the update fails.
+         */
+        void run() throws UpdateException;
+    }
+
+    private OptimisticRetry() {
+    }
+
+    /**
+     * Runs an update, and again after a short random wait while it fails with
+     * a {@link StaleVersionException}.
+     *
+     * @param update The update. It must reset the version of the entity
+     * before every attempt.
+     * @throws StaleVersionException If the last attempt fails because of the
+     * version.
+     * @throws UpdateException If an attempt fails for another reason.
+     */
+    static void run(Update update) throws UpdateException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                update.run();
+                return;
+            } catch (StaleVersionException e) {
+                if (attempt >= ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "Stale version, attempt {0}: {1}", new Object[]{attempt, e.getMessage()});
+                try {
+                    TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(1, (BASE_BACKOFF_MILLIS << attempt) + 1));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * Helper for the keyset pagination of the list endpoints. A page is requested
+ * with the "after" and "limit" query parameters. The response carries the
+ * opaque cursor of the next page in the {@link #NEXT_CURSOR_HEADER} header and
+ * in a "next" link, or none of them if it is the last page.
+ *
+ * @author Janam
+ */
+final class PageCursor {
+
+    /**
+     * Response header with the cursor of the next page.
+     */
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Page size used when no limit is given.
+     */
+    static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * Maximum page size.
+     */
+    static final int MAX_LIMIT = 1000;
+
+    private PageCursor() {
+    }
+
+    /**
+     * Tells if a page has been requested.
+     *
+     * @param after The "after" query parameter.
+     * @param limit The "limit" query parameter.
+     * @return true if any of the paging parameters is present.
+     */
+    static boolean isPaged(String after, Integer limit) {
+        return after != null || limit != null;
+    }
+
+    /**
+     * Validates the page size.
+     *
+     * @param limit The "limit" query parameter.
+     * @return The page size.
+     * @throws BadRequestException If the limit is not positive.
+     */
+    static int limit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (limit < 1) {
+            throw new BadRequestException("limit must be positive");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * Decodes a cursor into the key the page starts after.
+     *
+     * @param cursor The "after" query parameter.
+     * @return The key, or null for the first page.
+     * @throws BadRequestException If the cursor is not valid.
+     */
+    static String decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Decodes a cursor into a Long key.
+     *
+     * @param cursor The "after" query parameter.
+     * @return The key, or null for the first page.
+     * @throws BadRequestException If the cursor is not valid.
+     */
+    static Long decodeLong(String cursor) {
+        String key = decode(cursor);
+        try {
+            return key == null ? null : Long.valueOf(key);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Decodes a cursor into an Integer key.
+     *
+     * @param cursor The "after" query parameter.
+     * @return The key, or null for the first page.
+     * @throws BadRequestException If the cursor is not valid.
+     */
+    static Integer decodeInteger(String cursor) {
+        String key = decode(cursor);
+        try {
+            return key == null ? null : Integer.valueOf(key);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Encodes a key into an opaque cursor.
+     *
+     * @param key The key of the last row of a page.
+     * @return The cursor.
+     */
+    static String encode(Object key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Trims the rows of a page. The rows must have been read with one more row
+     * than the page size; that extra row only tells there is a next page and
+     * is removed from the list.
+     *
+     * @param <T> The type of the rows.
+     * @param rows The rows read, at most limit + 1.
+     * @param limit The page size.
+     * @param key Function returning the key of a row.
+     * @return The cursor of the next page, or null if it is the last page.
+     */
+    static <T> String trim(List<T> rows, int limit, Function<T, ?> key) {
+        if (rows.size() <= limit) {
+            return null;
+        }
+        rows.subList(limit, rows.size()).clear();
+        return encode(key.apply(rows.get(limit - 1)));
+    }
+
+    /**
+     * Builds the response of a page.
+     *
+     * @param entity The entity wrapping the rows of the page.
+     * @param next The cursor of the next page, or null if it is the last page.
+     * @param uriInfo The request URI, to build the next link.
+     * @return The response.
+     */
+    static Response response(GenericEntity<?> entity, String next, UriInfo uriInfo) {
+        Response.ResponseBuilder builder = Response.ok(entity);
+        if (next != null) {
+            builder.header(NEXT_CURSOR_HEADER, next)
+                    .link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", next).build(), "next");
+        }
+        return builder.build();
+    }
+}
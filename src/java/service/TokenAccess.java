@@ -0,0 +1,36 @@
+package service;
+
+import entities.EnumUserType;
+import java.security.Principal;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.core.SecurityContext;
+
+/**
+ * Checks, in the methods marked with {@link TokenRequired}, that the data of
+ * a customer is only used by that customer or by an administrator.
+ *
+ * @author Iñigo
+ */
+final class TokenAccess {
+
+    private TokenAccess() {
+    }
+
+    /**
+     * Checks that the signed-in user is the owner of a mail or an
+     * administrator. Mails are compared ignoring case, like the user table.
+     *
+     * @param security The security context set by {@link TokenFilter}.
+     * @param mail The mail of the owner of the data, or null.
+     * @throws ForbiddenException If the user is not allowed.
+     */
+    static void checkSelfOrAdmin(SecurityContext security, String mail) {
+        if (security.isUserInRole(EnumUserType.ADMIN.name())) {
+            return;
+        }
+        Principal principal = security.getUserPrincipal();
+        if (principal == null || mail == null || !principal.getName().equalsIgnoreCase(mail)) {
+            throw new ForbiddenException();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package service;
+
+import encryption.SessionToken;
+import encryption.SessionTokens;
+import entities.EnumUserType;
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Checks the session token of the requests to resources marked with
+ * {@link TokenRequired}. The token is read from the "Authorization: Bearer"
+ * header or from the {@link #TOKEN_HEADER} header, and verified by
+ * {@link SessionTokens} without RSA nor database work.
+ *
+ * @author Iñigo
+ */
+@Provider
+@TokenRequired
+@Priority(Priorities.AUTHENTICATION)
+public class TokenFilter implements ContainerRequestFilter {
+
+    /**
+     * Header carrying the session token, also used by signIn to return it.
+     */
+    public static final String TOKEN_HEADER = "X-Auth-Token";
+
+    /**
+     * Prefix of the bearer token in the Authorization header.
+     */
+    private static final String BEARER = "Bearer ";
+
+    /**
+     * Logger for class methods.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TokenFilter.class.getName());
+
+    /**
+     * The resource method matched by the request.
+     */
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        SessionToken token = SessionTokens.getInstance().verify(readToken(request));
+        if (token == null) {
+            LOGGER.log(Level.FINE, "TokenFilter: missing or invalid token for {0}.", request.getUriInfo().getPath());
+            request.abortWith(Response.status(Response.Status.UNAUTHORIZED)
+                    .header(HttpHeaders.WWW_AUTHENTICATE, "Bearer")
+                    .build());
+            return;
+        }
+        if (!isAllowed(token.getUserType())) {
+            LOGGER.log(Level.WARNING, "TokenFilter: {0} is not allowed to use {1}.",
+                    new Object[]{token.getMail(), request.getUriInfo().getPath()});
+            request.abortWith(Response.status(Response.Status.FORBIDDEN).build());
+            return;
+        }
+        request.setSecurityContext(new TokenSecurityContext(token, request.getSecurityContext().isSecure()));
+    }
+
+    /**
+     * @return the token of the request, or null
+     */
+    private static String readToken(ContainerRequestContext request) {
+        String authorization = request.getHeaderString(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+        return request.getHeaderString(TOKEN_HEADER);
+    }
+
+    /**
+     * Checks the user types allowed by the method, or else by its class.
+     *
+     * @param userType The type of the signed-in user.
+     * @return Whether the user may call the method.
+     */
+    private boolean isAllowed(EnumUserType userType) {
+        Method method = resourceInfo.getResourceMethod();
+        TokenRequired required = method == null ? null : method.getAnnotation(TokenRequired.class);
+        if (required == null) {
+            required = resourceInfo.getResourceClass().getAnnotation(TokenRequired.class);
+        }
+        if (required == null || required.value().length == 0) {
+            return true;
+        }
+        for (EnumUserType allowed : required.value()) {
+            if (allowed == userType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Security context of a request with a valid token.
+     */
+    private static final class TokenSecurityContext implements SecurityContext {
+
+        private final SessionToken token;
+
+        private final boolean secure;
+
+        TokenSecurityContext(SessionToken token, boolean secure) {
+            this.token = token;
+            this.secure = secure;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return token::getMail;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return token.getUserType().name().equals(role);
+        }
+
+        @Override
+        public boolean isSecure() {
+            return secure;
+        }
+
+        @Override
+        public String getAuthenticationScheme() {
+            return "Bearer";
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package service;
+
+import entities.EnumUserType;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import javax.ws.rs.NameBinding;
+
+/**
+ * Marks the resources and methods that need a valid session token, checked
+ * by {@link TokenFilter}. When user types are given, the token must belong to
+ * one of them.
+ *
+ * @author Iñigo
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface TokenRequired {
+
+    /**
+     * @return the user types allowed, or none to allow any signed-in user
+     */
+    EnumUserType[] value() default {};
+}
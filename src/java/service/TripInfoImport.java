@@ -0,0 +1,276 @@
+package service;
+
+import ejbLocal.TripInfoManagerEJBLocal;
+import entities.TripInfo;
+import entities.TripInfoId;
+import exception.CreateException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ejb.EJBException;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Imports {@link TripInfo} objects from newline-delimited JSON, one object per
+ * line, while the report is written back as newline-delimited JSON.
+ *
+ * The request is read line by line and stored in chunks of
+ * {@link #CHUNK_SIZE} objects, each one in its own transaction, so neither the
+ * memory used nor the size of a transaction depends on the size of the file.
+ * When a chunk fails, its objects are stored one by one, so only the wrong
+ * lines are rejected and reported with their line numbers.
+ *
+ * Each line has the form
+ * {@code {"tripId":1,"customerId":"mail","initialDate":"...","lastDate":"..."}}
+ * with dates in the same format as the streaming endpoints.
+ *
+ * @author Iñigo
+ */
+final class TripInfoImport implements StreamingOutput {
+
+    /**
+     * Media type of newline-delimited JSON.
+     */
+    static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * Number of TripInfo objects stored in each transaction.
+     */
+    private static final int CHUNK_SIZE = 500;
+
+    /**
+     * Logger for class methods.
+     */
+    private static final Logger LOGGER = Logger.getLogger("restTripInfo");
+
+    /**
+     * The request body.
+     */
+    private final InputStream in;
+
+    /**
+     * EJB storing the chunks.
+     */
+    private final TripInfoManagerEJBLocal tripInfoEjb;
+
+    /**
+     * Format of the dates.
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+
+    /**
+     * The report being written.
+     */
+    private Writer report;
+
+    private long imported;
+
+    private long rejected;
+
+    /**
+     * @param in The request body.
+     * @param tripInfoEjb EJB storing the chunks.
+     */
+    TripInfoImport(InputStream in, TripInfoManagerEJBLocal tripInfoEjb) {
+        this.in = in;
+        this.tripInfoEjb = tripInfoEjb;
+        dateFormat.setLenient(false);
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        report = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<TripInfo> chunk = new ArrayList<>(CHUNK_SIZE);
+        List<Long> chunkLines = new ArrayList<>(CHUNK_SIZE);
+        Set<TripInfoId> chunkIds = new HashSet<>();
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            TripInfo tripInfo;
+            try {
+                tripInfo = parse(line);
+            } catch (IllegalArgumentException | JsonException | ClassCastException e) {
+                rejected++;
+                writeError(lineNumber, e.getMessage());
+                continue;
+            }
+            if (!chunkIds.add(tripInfo.getTripInfoId())) {
+                rejected++;
+                writeError(lineNumber, "Duplicated tripId and customerId.");
+                continue;
+            }
+            chunk.add(tripInfo);
+            chunkLines.add(lineNumber);
+            if (chunk.size() == CHUNK_SIZE) {
+                store(chunk, chunkLines);
+                chunk.clear();
+                chunkLines.clear();
+                chunkIds.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            store(chunk, chunkLines);
+        }
+        writeLine(Json.createObjectBuilder()
+                .add("type", "summary")
+                .add("lines", lineNumber)
+                .add("imported", imported)
+                .add("rejected", rejected));
+        report.flush();
+    }
+
+    /**
+     * Stores a chunk in its own transaction and reports the result. If the
+     * chunk fails, its objects are stored one by one.
+     *
+     * @param chunk The TripInfo objects to be stored.
+     * @param lines The line of each object of the chunk.
+     * @throws IOException If the report cannot be written.
+     */
+    private void store(List<TripInfo> chunk, List<Long> lines) throws IOException {
+        try {
+            tripInfoEjb.importTripInfos(chunk);
+            imported += chunk.size();
+        } catch (CreateException | EJBException ex) {
+            LOGGER.log(Level.WARNING, "TripInfoRESTful service: Exception importing tripInfo chunk, retrying one by one, {0}", ex.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                storeOne(chunk.get(i), lines.get(i));
+            }
+        }
+        writeLine(Json.createObjectBuilder()
+                .add("type", "progress")
+                .add("line", lines.get(lines.size() - 1))
+                .add("imported", imported)
+                .add("rejected", rejected));
+        report.flush();
+    }
+
+    /**
+     * Stores a single object of a failed chunk in its own transaction, and
+     * reports its line if it fails.
+     *
+     * @param tripInfo The TripInfo object to be stored.
+     * @param lineNumber The line of the object.
+     * @throws IOException If the report cannot be written.
+     */
+    private void storeOne(TripInfo tripInfo, long lineNumber) throws IOException {
+        // The rolled back transaction may have set a version, which would
+        // make the TripInfo look detached
+        tripInfo.setVersion(null);
+        try {
+            tripInfoEjb.createTripInfo(tripInfo);
+            imported++;
+        } catch (CreateException | EJBException ex) {
+            LOGGER.log(Level.SEVERE, "TripInfoRESTful service: Exception importing tripInfo, {0}", ex.getMessage());
+            rejected++;
+            writeError(lineNumber, ex.getMessage());
+        }
+    }
+
+    /**
+     * Parses and validates a line.
+     *
+     * @param line The line.
+     * @return The TripInfo object of the line.
+     * @throws IllegalArgumentException If the line is not a valid TripInfo.
+     */
+    private TripInfo parse(String line) {
+        JsonObject object = Json.createReader(new StringReader(line)).readObject();
+        JsonValue tripId = object.get("tripId");
+        if (!(tripId instanceof JsonNumber) || !((JsonNumber) tripId).isIntegral()) {
+            throw new IllegalArgumentException("tripId must be an integer.");
+        }
+        String customerId = object.getString("customerId", "").trim();
+        if (customerId.isEmpty()) {
+            throw new IllegalArgumentException("customerId is required.");
+        }
+        Date initialDate = parseDate(object, "initialDate");
+        Date lastDate = parseDate(object, "lastDate");
+        if (lastDate.before(initialDate)) {
+            throw new IllegalArgumentException("lastDate is before initialDate.");
+        }
+        TripInfo tripInfo = new TripInfo();
+        tripInfo.setTripInfoId(new TripInfoId(((JsonNumber) tripId).intValueExact(), customerId));
+        tripInfo.setInitialDate(initialDate);
+        tripInfo.setLastDate(lastDate);
+        return tripInfo;
+    }
+
+    /**
+     * Parses a date field, given as text or as milliseconds since the epoch.
+     *
+     * @param object The JSON object.
+     * @param name The name of the field.
+     * @return The date.
+     * @throws IllegalArgumentException If the field is missing or wrong.
+     */
+    private Date parseDate(JsonObject object, String name) {
+        JsonValue value = object.get(name);
+        if (value instanceof JsonNumber) {
+            return new Date(((JsonNumber) value).longValueExact());
+        }
+        if (value instanceof JsonString) {
+            try {
+                return dateFormat.parse(((JsonString) value).getString());
+            } catch (ParseException e) {
+                throw new IllegalArgumentException(name + " is not a valid date.");
+            }
+        }
+        throw new IllegalArgumentException(name + " is required.");
+    }
+
+    /**
+     * Reports a rejected line.
+     *
+     * @param lineNumber The number of the line.
+     * @param message The reason.
+     * @throws IOException If the report cannot be written.
+     */
+    private void writeError(long lineNumber, String message) throws IOException {
+        writeLine(Json.createObjectBuilder()
+                .add("type", "error")
+                .add("line", lineNumber)
+                .add("message", String.valueOf(message)));
+    }
+
+    /**
+     * Writes a line of the report.
+     *
+     * @param line The content of the line.
+     * @throws IOException If the report cannot be written.
+     */
+    private void writeLine(JsonObjectBuilder line) throws IOException {
+        StringWriter buffer = new StringWriter();
+        Json.createWriter(buffer).writeObject(line.build());
+        report.write(buffer.toString());
+        report.write('\n');
+    }
+}
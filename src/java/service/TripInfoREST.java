@@ -1,15 +1,19 @@
 package service;
 
+import dto.TripInfoPartition;
 import ejbLocal.CustomerManagerEJBLocal;
 import ejbLocal.TripInfoManagerEJBLocal;
 import ejbLocal.TripManagerEJBLocal;
 import entities.Customer;
+import entities.EnumUserType;
 import entities.Trip;
 import entities.TripInfo;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,18 +21,28 @@ import javax.ejb.EJB;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import entities.TripInfoId;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.UriInfo;
 
 /**
  * RESTful web service class exposing CRUD operations for {@link TripInfo}
- * entities.
+ * entities. The TripInfos of a customer can only be used with a valid session
+ * token of that customer or of an administrator.
  *
  * @author Iñigo
  */
@@ -58,6 +72,18 @@ public class TripInfoREST {
     @EJB
     private TripManagerEJBLocal tripEjb;
 
+    /**
+     * Request URI, used to build the next page links.
+     */
+    @Context
+    private UriInfo uriInfo;
+
+    /**
+     * Security context set by the {@link TokenFilter}.
+     */
+    @Context
+    private SecurityContext security;
+
     /**
      * RESTful POST method for creating {@link TripInfo} objects from XML
      * representation.
@@ -66,7 +92,9 @@ public class TripInfoREST {
      */
     @POST
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired
     public void create(TripInfo tripInfo) {
+        TokenAccess.checkSelfOrAdmin(security, tripInfo.getTripInfoId() == null ? null : tripInfo.getTripInfoId().getCustomerId());
         try {
             LOGGER.log(Level.INFO, "TripInfoRESTful service: create {0}.", tripInfo);
             tripInfoEjb.createTripInfo(tripInfo);
@@ -78,18 +106,57 @@ public class TripInfoREST {
         }
     }
 
+    /**
+     * RESTful POST method for importing {@link TripInfo} objects from
+     * newline-delimited JSON. The body is read while the report is streamed
+     * back, one JSON object per line for every rejected line, every stored
+     * chunk and the final summary.
+     *
+     * @param body The request body, one TripInfo per line.
+     * @return The import report.
+     */
+    @POST
+    @Path("import")
+    @Consumes({TripInfoImport.NDJSON, MediaType.TEXT_PLAIN})
+    @Produces(TripInfoImport.NDJSON)
+    @TokenRequired(EnumUserType.ADMIN)
+    public Response importTripInfos(InputStream body) {
+        LOGGER.info("TripInfoRESTful service: import tripInfos.");
+        return Response.ok(new TripInfoImport(body, tripInfoEjb)).build();
+    }
+
     /**
      * RESTful PUT method for updating {@link TripInfo} objects from XML
-     * representation.
+     * representation. The update is made from the version in the If-Match
+     * header, or else the version in the tripInfo. A tripInfo without any
+     * version overwrites the stored one, and is retried if it changes
+     * meanwhile.
      *
      * @param tripInfo The object containing tripInfo data.
+     * @param ifMatch The If-Match header, or null.
      */
     @PUT
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public void update(TripInfo tripInfo) {
+    @TokenRequired
+    public void update(TripInfo tripInfo, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        TokenAccess.checkSelfOrAdmin(security, tripInfo.getTripInfoId() == null ? null : tripInfo.getTripInfoId().getCustomerId());
+        Long expected = VersionTags.ifMatch(ifMatch);
         try {
             LOGGER.log(Level.INFO, "TripInfoRESTful service: update {0}.", tripInfo);
-            tripInfoEjb.updateTripInfo(tripInfo);
+            if (expected != null) {
+                tripInfo.setVersion(expected);
+            }
+            if (tripInfo.getVersion() != null) {
+                tripInfoEjb.updateTripInfo(tripInfo);
+            } else {
+                OptimisticRetry.run(() -> {
+                    tripInfo.setVersion(null);
+                    tripInfoEjb.updateTripInfo(tripInfo);
+                });
+            }
+        } catch (StaleVersionException ex) {
+            LOGGER.log(Level.WARNING, "TripInfoRESTful service: Stale tripInfo, {0}", ex.getMessage());
+            throw VersionTags.conflict(ex, expected);
         } catch (UpdateException ex) {
             LOGGER.log(Level.SEVERE,
                     "TripInfoRESTful service: Exception updating tripInfo, {0}",
@@ -107,7 +174,9 @@ public class TripInfoREST {
      */
     @DELETE
     @Path("{customerId}/{tripId}")
+    @TokenRequired
     public void delete(@PathParam("customerId") String customerId, @PathParam("tripId") Integer tripId) {
+        TokenAccess.checkSelfOrAdmin(security, customerId);
         TripInfoId tripInfoId = new TripInfoId(tripId, customerId);
         try {
             LOGGER.log(Level.INFO, "TripInfoRESTful service: delete TripInfo by id={0}.", tripInfoId);
@@ -127,12 +196,15 @@ public class TripInfoREST {
      *
      * @param customerId The ID of the customer associated with the trip.
      * @param tripId The ID of the trip to be read.
-     * @return The TripInfo object containing data.
+     * @return The TripInfo object containing data, with its version in the
+     * ETag header.
      */
     @GET
     @Path("{customerId}/{tripId}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public TripInfo find(@PathParam("customerId") String customerId, @PathParam("tripId") Integer tripId) {
+    @TokenRequired
+    public Response find(@PathParam("customerId") String customerId, @PathParam("tripId") Integer tripId) {
+        TokenAccess.checkSelfOrAdmin(security, customerId);
         TripInfo tripInfo = null;
         TripInfoId tripInfoId = new TripInfoId(tripId, customerId);
         try {
@@ -144,31 +216,48 @@ public class TripInfoREST {
                     ex.getMessage());
             throw new InternalServerErrorException(ex);
         }
-        return tripInfo;
+        if (tripInfo == null) {
+            return Response.noContent().build();
+        }
+        return Response.ok(tripInfo).tag(VersionTags.tag(tripInfo.getVersion())).build();
     }
 
     /**
      * RESTful GET method for reading all {@link TripInfo} objects associated
-     * with a given trip.
+     * with a given trip. When the "after" or "limit" query parameters are
+     * given, only a page ordered by customer id is returned, and the cursor of
+     * the next page is sent in the X-Next-Cursor header.
      *
      * @param tripId The id of the trip for which to retrieve TripInfo objects.
+     * @param after The cursor of the page, or null for the first page.
+     * @param limit The maximum number of TripInfo objects in the page.
      * @return A List of {@link TripInfo} objects.
      */
     @GET
     @Path("allByTrip/{tripId}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public List<TripInfo> findAllTripInfoByTrip(@PathParam("tripId") Integer tripId) {
+    @TokenRequired(EnumUserType.ADMIN)
+    public Response findAllTripInfoByTrip(@PathParam("tripId") Integer tripId,
+            @QueryParam("after") String after, @QueryParam("limit") Integer limit) {
         List<TripInfo> tripInfoList = null;
+        String next = null;
         try {
             Trip trip = tripEjb.findTripById(tripId);
-            tripInfoList = tripInfoEjb.findAllTripInfoByTrip(trip);
+            if (PageCursor.isPaged(after, limit)) {
+                int size = PageCursor.limit(limit);
+                tripInfoList = tripInfoEjb.findTripInfoPageByTrip(trip, PageCursor.decode(after), size + 1);
+                next = PageCursor.trim(tripInfoList, size, tripInfo -> tripInfo.getTripInfoId().getCustomerId());
+            } else {
+                tripInfoList = tripInfoEjb.findAllTripInfoByTrip(trip);
+            }
         } catch (ReadException ex) {
             LOGGER.log(Level.SEVERE,
                     "TripInfoRESTful service: Exception reading all TripInfo by trip, {0}",
                     ex.getMessage());
             throw new InternalServerErrorException(ex);
         }
-        return tripInfoList;
+        return PageCursor.response(new GenericEntity<List<TripInfo>>(tripInfoList) {
+        }, next, uriInfo);
     }
 
     /**
@@ -182,10 +271,15 @@ public class TripInfoREST {
     @GET
     @Path("active/{mail}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    @TokenRequired
     public List<TripInfo> findActiveTripInfoByCustomer(@PathParam("mail") String mail) {
+        TokenAccess.checkSelfOrAdmin(security, mail);
         List<TripInfo> tripInfoList = null;
         try {
             Customer customer = customerEjb.findCustomerByMail(mail);
+            if (customer == null) {
+                throw new NotFoundException();
+            }
             tripInfoList = tripInfoEjb.findActiveTripInfoByCustomer(customer);
         } catch (ReadException ex) {
             LOGGER.log(Level.SEVERE,
@@ -207,10 +301,15 @@ public class TripInfoREST {
     @GET
     @Path("inactive/{mail}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    @TokenRequired
     public List<TripInfo> findInactiveTripInfoByCustomer(@PathParam("mail") String mail) {
+        TokenAccess.checkSelfOrAdmin(security, mail);
         List<TripInfo> tripInfoList = null;
         try {
             Customer customer = customerEjb.findCustomerByMail(mail);
+            if (customer == null) {
+                throw new NotFoundException();
+            }
             tripInfoList = tripInfoEjb.findInactiveTripInfoByCustomer(customer);
         } catch (ReadException ex) {
             LOGGER.log(Level.SEVERE,
@@ -221,28 +320,70 @@ public class TripInfoREST {
         return tripInfoList;
     }
 
+    /**
+     * RESTful GET method for reading the active and inactive {@link TripInfo}
+     * objects of a Customer in a single call. It runs one query and does not
+     * load the Customer.
+     *
+     * @param mail The mail of the Customer.
+     * @return The {@link TripInfoPartition} of the Customer.
+     */
+    @GET
+    @Path("byCustomer/{mail}/partitioned")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    @TokenRequired
+    public TripInfoPartition findPartitionedTripInfoByCustomer(@PathParam("mail") String mail) {
+        TokenAccess.checkSelfOrAdmin(security, mail);
+        try {
+            return tripInfoEjb.findPartitionedTripInfoByCustomer(mail);
+        } catch (ReadException ex) {
+            LOGGER.log(Level.SEVERE,
+                    "TripInfoRESTful service: Exception reading partitioned TripInfo by customer, {0}",
+                    ex.getMessage());
+            throw new InternalServerErrorException(ex);
+        }
+    }
+
     /**
      * RESTful GET method for reading all {@link TripInfo} objects associated
-     * with a given Customer.
+     * with a given Customer. When the "after" or "limit" query parameters are
+     * given, only a page ordered by trip id is returned, and the cursor of the
+     * next page is sent in the X-Next-Cursor header.
      *
      * @param mail The mail of the Customer for which to retrieve TripInfo
      * objects.
+     * @param after The cursor of the page, or null for the first page.
+     * @param limit The maximum number of TripInfo objects in the page.
      * @return A List of {@link TripInfo} objects.
      */
     @GET
     @Path("allByCustomer/{mail}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public List<TripInfo> findAllTripInfoByCustomer(@PathParam("mail") String mail) {
+    @TokenRequired
+    public Response findAllTripInfoByCustomer(@PathParam("mail") String mail,
+            @QueryParam("after") String after, @QueryParam("limit") Integer limit) {
+        TokenAccess.checkSelfOrAdmin(security, mail);
         List<TripInfo> tripInfoList = null;
+        String next = null;
         try {
             Customer customer = customerEjb.findCustomerByMail(mail);
-            tripInfoList = tripInfoEjb.findAllTripInfoByCustomer(customer);
+            if (customer == null) {
+                throw new NotFoundException();
+            }
+            if (PageCursor.isPaged(after, limit)) {
+                int size = PageCursor.limit(limit);
+                tripInfoList = tripInfoEjb.findTripInfoPageByCustomer(customer, PageCursor.decodeInteger(after), size + 1);
+                next = PageCursor.trim(tripInfoList, size, tripInfo -> tripInfo.getTripInfoId().getTripId());
+            } else {
+                tripInfoList = tripInfoEjb.findAllTripInfoByCustomer(customer);
+            }
         } catch (ReadException ex) {
             LOGGER.log(Level.SEVERE,
                     "TripInfoRESTful service: Exception reading all TripInfo by customer, {0}",
                     ex.getMessage());
             throw new InternalServerErrorException(ex);
         }
-        return tripInfoList;
+        return PageCursor.response(new GenericEntity<List<TripInfo>>(tripInfoList) {
+        }, next, uriInfo);
     }
 }
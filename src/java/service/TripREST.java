@@ -1,12 +1,16 @@
 package service;
 
+import dto.TripSummary;
 import entities.EnumTripType;
+import entities.EnumUserType;
 import ejbLocal.TripManagerEJBLocal;
 import entities.Trip;
 import exception.CreateException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,13 +18,22 @@ import javax.ejb.EJB;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 
 /**
  * RESTful web service class exposing CRUD operations for {@link Trip} entities.
@@ -41,6 +54,12 @@ public class TripREST {
     @EJB
     private TripManagerEJBLocal ejb;
 
+    /**
+     * Request URI, used to build the next page links.
+     */
+    @Context
+    private UriInfo uriInfo;
+
     /**
      * RESTful POST method for creating {@link Trip} objects from XML
      * representation.
@@ -49,6 +68,7 @@ public class TripREST {
      */
     @POST
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
     public void create(Trip trip) {
         try {
             LOGGER.log(Level.INFO, "TripRESTful service: create {0}.", trip);
@@ -63,16 +83,34 @@ public class TripREST {
 
     /**
      * RESTful PUT method for updating {@link Trip} objects from XML
-     * representation.
+     * representation. The update is made from the version in the If-Match
+     * header, or else the version in the trip. A trip without any version
+     * overwrites the stored one, and is retried if it changes meanwhile.
      *
      * @param trip The object containing trip data.
+     * @param ifMatch The If-Match header, or null.
      */
     @PUT
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public void update(Trip trip) {
+    @TokenRequired(EnumUserType.ADMIN)
+    public void update(Trip trip, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        Long expected = VersionTags.ifMatch(ifMatch);
         try {
             LOGGER.log(Level.INFO, "TripRESTful service: update {0}.", trip);
-            ejb.updateTrip(trip);
+            if (expected != null) {
+                trip.setVersion(expected);
+            }
+            if (trip.getVersion() != null) {
+                ejb.updateTrip(trip);
+            } else {
+                OptimisticRetry.run(() -> {
+                    trip.setVersion(null);
+                    ejb.updateTrip(trip);
+                });
+            }
+        } catch (StaleVersionException ex) {
+            LOGGER.log(Level.WARNING, "TripRESTful service: Stale trip, {0}", ex.getMessage());
+            throw VersionTags.conflict(ex, expected);
         } catch (UpdateException ex) {
             LOGGER.log(Level.SEVERE,
                     "TripRESTful service: Exception updating trip, {0}",
@@ -81,6 +119,45 @@ public class TripREST {
         }
     }
 
+    /**
+     * RESTful PATCH method for changing some fields of a {@link Trip} with a
+     * JSON Merge Patch document. Only tripType and description may be
+     * changed, and only those given are written. With an If-Match header the
+     * trip is only changed if it is still that version.
+     *
+     * @param id The id of the trip to be changed.
+     * @param ifMatch The If-Match header, or null.
+     * @param body The merge patch document.
+     * @return An empty response with the new version in the ETag header.
+     */
+    @PATCH
+    @Path("{id}")
+    @Consumes({MergePatch.MEDIA_TYPE, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
+    public Response patch(@PathParam("id") Integer id,
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, InputStream body) {
+        Long expected = VersionTags.ifMatch(ifMatch);
+        MergePatch patch = new MergePatch(body, TripManagerEJBLocal.PATCH_ATTRIBUTES)
+                .enumeration("tripType", EnumTripType.class, true)
+                .string("description", true);
+        try {
+            LOGGER.log(Level.INFO, "TripRESTful service: patch {0}.", id);
+            Long version = ejb.patchTrip(id, expected, patch.changes());
+            if (version == null) {
+                throw new NotFoundException();
+            }
+            return Response.noContent().tag(VersionTags.tag(version)).build();
+        } catch (StaleVersionException ex) {
+            LOGGER.log(Level.WARNING, "TripRESTful service: Stale trip, {0}", ex.getMessage());
+            throw VersionTags.conflict(ex, expected);
+        } catch (UpdateException ex) {
+            LOGGER.log(Level.SEVERE,
+                    "TripRESTful service: Exception patching trip, {0}",
+                    ex.getMessage());
+            throw new InternalServerErrorException(ex);
+        }
+    }
+
     /**
      * RESTful DELETE method for deleting {@link Trip} objects from id.
      *
@@ -88,6 +165,7 @@ public class TripREST {
      */
     @DELETE
     @Path("{id}")
+    @TokenRequired(EnumUserType.ADMIN)
     public void delete(@PathParam("id") Integer id) {
         try {
             LOGGER.log(Level.INFO, "TripRESTful service: delete Trip by id={0}.", id);
@@ -106,12 +184,13 @@ public class TripREST {
      * representation.
      *
      * @param id The id for the object to be read.
-     * @return The Trip object containing data.
+     * @return The Trip object containing data, with its version in the ETag
+     * header.
      */
     @GET
     @Path("{id}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public Trip find(@PathParam("id") Integer id) {
+    public Response find(@PathParam("id") Integer id) {
         Trip trip = null;
         try {
             LOGGER.log(Level.INFO, "TripRESTful service: find Trip by id={0}.", id);
@@ -122,30 +201,97 @@ public class TripREST {
                     ex.getMessage());
             throw new InternalServerErrorException(ex);
         }
-        return trip;
+        if (trip == null) {
+            return Response.noContent().build();
+        }
+        return Response.ok(trip).tag(VersionTags.tag(trip.getVersion())).build();
     }
 
     /**
-     * RESTful GET method for reading all {@link Trip} objects.
+     * RESTful GET method for reading all {@link Trip} objects. When the
+     * "after" or "limit" query parameters are given, only a page of trips
+     * ordered by id is returned, and the cursor of the next page is sent in
+     * the X-Next-Cursor header.
      *
+     * @param after The cursor of the page, or null for the first page.
+     * @param limit The maximum number of trips in the page.
      * @return A List of {@link Trip} objects.
      */
     @GET
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public List<Trip> findAllTrips() {
+    public Response findAllTrips(@QueryParam("after") String after, @QueryParam("limit") Integer limit) {
         List<Trip> tripList = null;
+        String next = null;
         try {
-            LOGGER.log(Level.INFO, "TripRESTful service: find all Trips.");
-            tripList = ejb.findAllTrips();
+            if (PageCursor.isPaged(after, limit)) {
+                LOGGER.log(Level.INFO, "TripRESTful service: find page of Trips.");
+                int size = PageCursor.limit(limit);
+                tripList = ejb.findTripsPage(PageCursor.decodeInteger(after), size + 1);
+                next = PageCursor.trim(tripList, size, Trip::getId);
+            } else {
+                LOGGER.log(Level.INFO, "TripRESTful service: find all Trips.");
+                tripList = ejb.findAllTrips();
+            }
         } catch (ReadException ex) {
             LOGGER.log(Level.SEVERE,
                     "TripRESTful service: Exception reading all Trips, {0}",
                     ex.getMessage());
             throw new InternalServerErrorException(ex);
         }
+        return PageCursor.response(new GenericEntity<List<Trip>>(tripList) {
+        }, next, uriInfo);
+    }
+
+    /**
+     * RESTful GET method for reading the scalar columns of all {@link Trip}
+     * objects, without their cities or TripInfos. It runs a single SQL
+     * statement.
+     *
+     * @return A List of {@link TripSummary} objects.
+     */
+    @GET
+    @Path("summary")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public List<TripSummary> findAllTripSummaries() {
+        List<TripSummary> tripList = null;
+        try {
+            LOGGER.log(Level.INFO, "TripRESTful service: find all Trip summaries.");
+            tripList = ejb.findTripSummaries();
+        } catch (ReadException ex) {
+            LOGGER.log(Level.SEVERE,
+                    "TripRESTful service: Exception reading Trip summaries, {0}",
+                    ex.getMessage());
+            throw new InternalServerErrorException(ex);
+        }
         return tripList;
     }
 
+    /**
+     * RESTful GET method for streaming all {@link Trip} objects as a JSON
+     * array. The trips are read with a server-side cursor and written one by
+     * one, so memory use does not depend on the number of trips.
+     *
+     * @return The streamed JSON array of trips.
+     */
+    @GET
+    @Path("stream")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StreamingOutput streamAllTrips() {
+        LOGGER.log(Level.INFO, "TripRESTful service: stream all Trips.");
+        return out -> {
+            JsonEntityWriter writer = new JsonEntityWriter(out);
+            try {
+                ejb.streamAllTrips(writer.trips());
+            } catch (ReadException ex) {
+                LOGGER.log(Level.SEVERE,
+                        "TripRESTful service: Exception streaming all Trips, {0}",
+                        ex.getMessage());
+                throw new InternalServerErrorException(ex);
+            }
+            writer.finish();
+        };
+    }
+
     /**
      * RESTful GET method for reading all {@link Trip} objects with a certain
      * tripType value.
@@ -1,21 +1,32 @@
 package service;
 
 import ejbLocal.UserManagerEJBLocal;
-import static encryption.EncryptionImplementation.decrypWithPrivateKey;
-import static encryption.EncryptionImplementation.generateHash;
+import encryption.CredentialWorkerPool;
+import encryption.SessionTokens;
+import encryption.SignInCache;
+import entities.EnumUserType;
 import entities.User;
 import exception.CreateException;
+import exception.CredentialRejectedException;
 import exception.DeleteException;
 import exception.ReadException;
+import exception.StaleVersionException;
 import exception.UpdateException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.EJB;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
 
 /**
- * RESTful web service for managing users.
+ * RESTful web service for managing users. Only administrators with a valid
+ * session token can create, change or delete users, so nobody can give
+ * themselves the ADMIN user type; a user can only be read by that user or an
+ * administrator.
  *
  * @author dani
  */
@@ -26,6 +37,10 @@ public class UserREST {
     @EJB
     private UserManagerEJBLocal userManagerEJB;
 
+    // Security context set by the TokenFilter.
+    @Context
+    private SecurityContext security;
+
     // Logger for logging messages.
     private static final Logger LOGGER = Logger.getLogger(CustomerREST.class.getName());
 
@@ -36,6 +51,7 @@ public class UserREST {
      */
     @POST
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @TokenRequired(EnumUserType.ADMIN)
     public void createUser(User user) {
         try {
             LOGGER.log(Level.INFO, "Creating user");
@@ -51,14 +67,34 @@ public class UserREST {
     /**
      * Updates an existing user.
      *
+     * The update is made from the version in the If-Match header, or else the
+     * version in the user. A user without any version overwrites the stored
+     * one, and is retried if it changes meanwhile.
+     *
      * @param user User object with updated information.
+     * @param ifMatch The If-Match header, or null.
      */
     @PUT
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public void updateUser(User user) {
+    @TokenRequired(EnumUserType.ADMIN)
+    public void updateUser(User user, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        Long expected = VersionTags.ifMatch(ifMatch);
         try {
             LOGGER.log(Level.INFO, "Updating user");
-            userManagerEJB.updateUser(user);
+            if (expected != null) {
+                user.setVersion(expected);
+            }
+            if (user.getVersion() != null) {
+                userManagerEJB.updateUser(user);
+            } else {
+                OptimisticRetry.run(() -> {
+                    user.setVersion(null);
+                    userManagerEJB.updateUser(user);
+                });
+            }
+        } catch (StaleVersionException e) {
+            LOGGER.log(Level.WARNING, "Stale user: {0}", e.getMessage());
+            throw VersionTags.conflict(e, expected);
         } catch (UpdateException e) {
             LOGGER.log(Level.SEVERE,
                     "Error updating user",
@@ -74,6 +110,7 @@ public class UserREST {
      */
     @DELETE
     @Path("/{userId}")
+    @TokenRequired(EnumUserType.ADMIN)
     public void deleteUser(@PathParam("userId") String userId) {
         try {
             LOGGER.log(Level.SEVERE,
@@ -91,12 +128,15 @@ public class UserREST {
      * Retrieves a user by email.
      *
      * @param mail User's email address.
-     * @return User object in JSON or XML format.
+     * @return User object in JSON or XML format, with its version in the ETag
+     * header.
      */
     @GET
     @Path("/byMail/{mail}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public User getUserByMail(@PathParam("mail") String mail) {
+    @TokenRequired
+    public Response getUserByMail(@PathParam("mail") String mail) {
+        TokenAccess.checkSelfOrAdmin(security, mail);
         User user = null;
         try {
             user = userManagerEJB.findUserByMail(mail);
@@ -104,39 +144,70 @@ public class UserREST {
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error retrieving customer by mail: " + mail, e);
         }
-        return user;
+        if (user == null) {
+            throw new NotFoundException();
+        }
+        return Response.ok(user).tag(VersionTags.tag(user.getVersion())).build();
     }
 
     /**
-     * Handles user sign-in.
+     * Handles user sign-in. On success the session token for the
+     * {@link TokenRequired} resources is returned in the
+     * {@link TokenFilter#TOKEN_HEADER} header.
      *
      * @param user User object with login credentials.
-     * @return User object with sensitive information removed or null if
+     * @return User object with sensitive information removed, or no content if
      * authentication fails.
      */
     @POST
     @Path("signIn")
     @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public User signIn(User user) {
+    public Response signIn(User user) {
         User userReturn = null;
+        SignInCache signInCache = SignInCache.getInstance();
         try {
+            // Same credential verified recently
+            User signedIn = signInCache.get(user.getMail(), user.getPassword());
+            if (signedIn != null) {
+                return signedIn(signedIn);
+            }
+            long stamp = signInCache.stamp();
             userReturn = userManagerEJB.findUserByMail(user.getMail());
-            if (userReturn.getPassword().equals(generateHash(decrypWithPrivateKey(user.getPassword())))) {
-                userReturn.setPassword(null);
-                return new User(userReturn.getMail(), null, userReturn.getCreationDate(), userReturn.getUserType());
+            if (userReturn == null) {
+                return Response.noContent().build();
+            }
+            if (userReturn.getPassword().equals(CredentialWorkerPool.getInstance().decryptAndHash(user.getPassword()))) {
+                signedIn = new User(userReturn.getMail(), null, userReturn.getCreationDate(), userReturn.getUserType());
+                signInCache.put(user.getPassword(), signedIn, stamp);
+                return signedIn(signedIn);
             } else {
-                return null;
+                return Response.noContent().build();
             }
 
+        } catch (CredentialRejectedException e) {
+            LOGGER.log(Level.WARNING, "Sign in rejected, credential workers busy: {0}", user.getMail());
+            throw new ServiceUnavailableException(e.getRetryAfterSeconds());
         } catch (ReadException e) {
             LOGGER.log(Level.SEVERE, "Error retrieving customer by mail: " + user.getMail(), e);
 
         } catch (Exception ex) {
             Logger.getLogger(UserREST.class.getName()).log(Level.SEVERE, null, ex);
         }
-        return null;
+        return Response.noContent().build();
+
+    }
 
+    /**
+     * Builds the response of a successful sign-in, with a new session token.
+     *
+     * @param user The signed-in user, without password.
+     * @return The response.
+     */
+    private static Response signedIn(User user) {
+        return Response.ok(user)
+                .header(TokenFilter.TOKEN_HEADER, SessionTokens.getInstance().issue(user.getMail(), user.getUserType()))
+                .build();
     }
 
 }
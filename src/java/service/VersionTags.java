@@ -0,0 +1,67 @@
+package service;
+
+import exception.StaleVersionException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
+/**
+ * Helper for the entity tags of the versioned entities. The tag of an entity
+ * is its version, as a strong tag such as "3". It is sent in the ETag header
+ * of the GET and PATCH responses, and the PUT and PATCH requests may send it
+ * back in the If-Match header to only change that version.
+ *
+ * @author Janam
+ */
+final class VersionTags {
+
+    private VersionTags() {
+    }
+
+    /**
+     * Returns the entity tag of a version.
+     *
+     * @param version The version, or null.
+     * @return The entity tag, or null if there is no version.
+     */
+    static EntityTag tag(Long version) {
+        return version == null ? null : new EntityTag(version.toString());
+    }
+
+    /**
+     * Reads the version of an If-Match header.
+     *
+     * @param ifMatch The If-Match header, or null.
+     * @return The version, or null if there is no header or it is "*".
+     * @throws ClientErrorException With 412 Precondition Failed if the header
+     * is not the tag of a version.
+     */
+    static Long ifMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            throw new ClientErrorException(Response.Status.PRECONDITION_FAILED);
+        }
+        try {
+            return Long.valueOf(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new ClientErrorException(Response.Status.PRECONDITION_FAILED);
+        }
+    }
+
+    /**
+     * Returns the error of an update made from an old version: 412
+     * Precondition Failed if the version came from the If-Match header, 409
+     * Conflict if it came in the entity.
+     *
+     * @param e The exception of the update.
+     * @param ifMatch The version of the If-Match header, or null.
+     * @return The error to be thrown.
+     */
+    static ClientErrorException conflict(StaleVersionException e, Long ifMatch) {
+        return new ClientErrorException(e.getMessage(),
+                ifMatch != null ? Response.Status.PRECONDITION_FAILED : Response.Status.CONFLICT);
+    }
+}